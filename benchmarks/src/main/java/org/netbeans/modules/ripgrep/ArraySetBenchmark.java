@@ -0,0 +1,90 @@
+package org.netbeans.modules.ripgrep;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openide.filesystems.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of filling the {@link ArraySet} that backs the list of matching
+ * objects of {@link ResultModel}.
+ *
+ * <p>The matching objects are created once, over empty files in a temporary
+ * folder, so that only the insertion is measured.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArraySetBenchmark {
+
+    @Param({"500", "5000", "20000"})
+    private int size;
+
+    private File root;
+    private MatchingObject[] elements;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("fast-search-bench").toFile(); //NOI18N
+        ResultModel model = new ResultModel(null, null, null);
+        elements = new MatchingObject[size];
+        for (int i = 0; i < size; i++) {
+            File file = new File(root, "src/main/java/File" + i + ".java"); //NOI18N
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+            elements[i] = new MatchingObject(model,
+                    FileUtil.toFileObject(file), StandardCharsets.UTF_8,
+                    Collections.<TextDetail>emptyList());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public ArraySet<MatchingObject> insert() {
+        ArraySet<MatchingObject> set = new ArraySet<MatchingObject>(size).
+                ordering(false).nullIsAllowed(false);
+        for (MatchingObject element : elements) {
+            set.add(element);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public ArraySet<MatchingObject> insertWithDuplicates() {
+        // the limit is checked first, keep room for the last duplicate
+        ArraySet<MatchingObject> set = new ArraySet<MatchingObject>(size + 1).
+                ordering(false).nullIsAllowed(false);
+        for (MatchingObject element : elements) {
+            set.add(element);
+            try {
+                set.add(element);
+            } catch (IllegalArgumentException ex) {
+                // duplicate rejected, as in ResultModel
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,147 @@
+package org.netbeans.modules.ripgrep;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.netbeans.api.search.SearchPattern;
+import org.netbeans.api.search.provider.SearchListener;
+import org.netbeans.modules.ripgrep.matcher.RipGrepJsonDecoder;
+import org.netbeans.modules.ripgrep.matcher.RipGrepMatcher;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays recorded {@code rg --json} output through the pipeline that turns
+ * it into search results: decoding in {@link BasicComposition}, creation of
+ * text details by {@link RipGrepMatcher} and insertion into the
+ * {@link ResultModel}, in batches as delivered by {@link ResultBatcher}.
+ *
+ * <p>The fixtures in {@code src/main/resources/fixtures} contain paths
+ * relative to the folder rg was started in. The files are created, empty, in
+ * a temporary folder, as only their existence matters to the pipeline.</p>
+ *
+ * <p>Besides the replays per second, the {@code lines} and {@code matches}
+ * counters report rg output lines and submatches processed per second. Run
+ * with {@code -prof gc} to get the allocation rate.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+    // keep every result, limits would stop the replay early
+    "-Dnetbeans.search.count.limit=1000000", //NOI18N
+    "-Dnetbeans.search.details.count.limit=10000000"}) //NOI18N
+public class PipelineBenchmark {
+
+    @Param({"small", "medium", "large"})
+    private String fixture;
+
+    private File root;
+    private byte[] output;
+    private long lines;
+    private long matches;
+    private BasicSearchCriteria criteria;
+    private BasicComposition composition;
+    private final SearchListener listener = new SearchListener() {
+    };
+
+    /**
+     * Events processed by the replays, reported per second.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long lines;
+        public long matches;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("fast-search-bench").toFile(); //NOI18N
+        String json;
+        try (InputStream in = new GZIPInputStream(
+                PipelineBenchmark.class.getResourceAsStream(
+                        "/fixtures/" + fixture + ".json.gz"))) {        //NOI18N
+            json = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+        String prefix = root.getAbsolutePath().replace("\\", "\\\\")    //NOI18N
+                + File.separator.replace("\\", "\\\\");                 //NOI18N
+        json = json.replace("\"path\":{\"text\":\"", //NOI18N
+                "\"path\":{\"text\":\"" + prefix);                      //NOI18N
+        output = json.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < output.length; i++) {
+            if (output[i] == '\n') {
+                lines++;
+            }
+        }
+        try (RipGrepJsonDecoder decoder = new RipGrepJsonDecoder(
+                new ByteArrayInputStream(output))) {
+            RipGrepJsonDecoder.Event event;
+            while ((event = decoder.next()) != null) {
+                if (event == RipGrepJsonDecoder.Event.BEGIN) {
+                    File file = new File(decoder.getPath());
+                    file.getParentFile().mkdirs();
+                    file.createNewFile();
+                } else if (event == RipGrepJsonDecoder.Event.MATCH) {
+                    matches += decoder.getSubmatchCount();
+                }
+            }
+        }
+
+        criteria = new BasicSearchCriteria();
+        criteria.setTextPattern("fixture");                             //NOI18N
+        RipGrepMatcher matcher = new RipGrepMatcher(
+                SearchPattern.create("fixture", false, false, false));  //NOI18N
+        composition = new BasicComposition(null, matcher, criteria,
+                fixture);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public ResultModel replay(Counters counters) throws IOException {
+        ResultModel model = new ResultModel(criteria, null, composition);
+        List<MatchingObject.Def> batch = new ArrayList<>(
+                ResultBatcher.BATCH_SIZE);
+        composition.readResults(new ByteArrayInputStream(output), listener,
+                Runnable::run, (MatchingObject.Def def) -> {
+                    batch.add(def);
+                    if (batch.size() == ResultBatcher.BATCH_SIZE) {
+                        model.objectsFound(batch);
+                        batch.clear();
+                    }
+                });
+        model.objectsFound(batch);
+        model.close();
+        counters.lines += lines;
+        counters.matches += matches;
+        return model;
+    }
+}
@@ -20,12 +20,18 @@
 package org.netbeans.modules.ripgrep;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * This class implements the {@link Set} interface, backed by an
- * {@link ArrayList}.
+ * {@link ArrayList}. Membership is tracked by an additional {@link HashSet}
+ * index, so {@link #contains(java.lang.Object)} and the duplicity check of
+ * {@link #add(java.lang.Comparable)} do not scan the list.
  * <p>The {@link ArrayList} supports :
  * <ul>
  * <li>the reordering of elements after adding each new element (see {@link
@@ -53,6 +59,7 @@ public class ArraySet<E extends Comparable<E>>
     private int limit;
     private boolean isSorted;
     private boolean isNullAllowed;
+    private HashSet<E> index = new HashSet<>();
 
     /**
      * Creates new {@code ArraySet}.
@@ -67,6 +74,14 @@ public class ArraySet<E extends Comparable<E>>
         this.limit = limit;
     }
 
+    /**
+     * Changes the max number of elements that can be added to this
+     * {@code ArraySet}. Elements already added are kept.
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
     /**
      * {@inheritDoc}
      * @throws IllegalStateException if {@link #size()} {@code >= limit}.
@@ -86,6 +101,7 @@ public class ArraySet<E extends Comparable<E>>
             throw new IllegalArgumentException();
         }
         if(super.add(e)) {
+            index.add(e);
             if(isSorted) {
                 Collections.sort(this);
             }
@@ -94,6 +110,111 @@ public class ArraySet<E extends Comparable<E>>
         return false;
     }
 
+    @Override
+    public void add(int i, E e) {
+        super.add(i, e);
+        index.add(e);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        boolean changed = super.addAll(c);
+        index.addAll(c);
+        return changed;
+    }
+
+    @Override
+    public boolean addAll(int i, Collection<? extends E> c) {
+        boolean changed = super.addAll(i, c);
+        index.addAll(c);
+        return changed;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return index.contains(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (super.remove(o)) {
+            index.remove(o);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public E remove(int i) {
+        E e = super.remove(i);
+        index.remove(e);
+        return e;
+    }
+
+    @Override
+    public E set(int i, E e) {
+        E orig = super.set(i, e);
+        index.remove(orig);
+        index.add(e);
+        return orig;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        index.clear();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return rehashIf(super.removeAll(c));
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return rehashIf(super.retainAll(c));
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        return rehashIf(super.removeIf(filter));
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        super.replaceAll(operator);
+        rehash();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        super.removeRange(fromIndex, toIndex);
+        rehash();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        ArraySet<E> clone = (ArraySet<E>) super.clone();
+        clone.index = new HashSet<>(index);
+        return clone;
+    }
+
+    /**
+     * Rebuilds the membership index. Must be called when the hash code of
+     * an element has changed.
+     */
+    public void rehash() {
+        index = new HashSet<>(this);
+    }
+
+    private boolean rehashIf(boolean changed) {
+        if (changed) {
+            rehash();
+        }
+        return changed;
+    }
+
     /**
      * Sets mode of ordering.
      * @param doOrdering if {@code true} - ordering of elements will be allowed,
@@ -19,19 +19,40 @@
 package org.netbeans.modules.ripgrep;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import org.netbeans.api.search.SearchRoot;
 import org.netbeans.api.search.provider.SearchInfo;
+import org.netbeans.api.search.provider.SearchInfoUtils;
 import org.netbeans.api.search.provider.SearchListener;
 import org.netbeans.modules.ripgrep.MatchingObject.Def;
+import org.netbeans.modules.ripgrep.index.TrigramIndexes;
+import org.netbeans.modules.ripgrep.matcher.RipGrepDiagnostic;
+import org.netbeans.modules.ripgrep.matcher.RipGrepJsonDecoder;
 import org.netbeans.modules.ripgrep.matcher.RipGrepMatcher;
+import org.netbeans.modules.ripgrep.matcher.RipGrepReplacement;
 import org.netbeans.modules.ripgrep.ui.UiUtils;
 import org.netbeans.spi.search.SearchScopeDefinition;
 import org.netbeans.spi.search.provider.SearchComposition;
@@ -41,6 +62,7 @@ import org.netbeans.spi.search.provider.SearchResultsDisplayer;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -55,8 +77,37 @@ public class BasicComposition extends SearchComposition<MatchingObject.Def> {
     private Presenter presenter;
     private String scopeDisplayName;
     AtomicBoolean terminated = new AtomicBoolean(false);
+    private ResultBatcher batcher;
+    /** Files found by a previous search this one refines, or {@code null}. */
+    private List<String> narrowed;
+    /** Whether the search ran to its end, without being terminated. */
+    private volatile boolean completed;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Number of results buffered when several roots are searched in parallel.
+     */
+    private static final int MERGE_QUEUE_CAPACITY = 1024;
+    private static final long MERGE_POLL_INTERVAL_MS = 100;
+    /**
+     * How long to wait for the rest of the rg error output after its JSON
+     * output ended.
+     */
+    private static final long ERRORS_TIMEOUT_MS = 1000;
+    /**
+     * Reads error output of rg processes, one thread per running process.
+     */
+    private static final RequestProcessor ERRORS_RP = new RequestProcessor(
+            BasicComposition.class.getName() + ".errors", 32);        //NOI18N
+    /**
+     * Maximum number of paths passed to one rg process when files are
+     * searched again, to keep the command line short.
+     */
+    private static final int SEARCH_AGAIN_PATHS = 256;
+    /**
+     * Maximum total length of the paths passed to one rg process when a
+     * search is narrowed by the index.
+     */
+    private static final int CANDIDATES_COMMAND_LENGTH = 16000;
 
     public BasicComposition(SearchInfo searchInfo, RipGrepMatcher matcher,
             BasicSearchCriteria basicSearchCriteria, String scopeDisplayName) {
@@ -77,53 +128,503 @@ public class BasicComposition extends SearchComposition<MatchingObject.Def> {
 
     @Override
     public void start(SearchListener listener) {
-
+        batcher = new ResultBatcher(
+                (ResultDisplayer) getSearchResultsDisplayer());
+        List<String> roots = filterFiles(matcher.getScopeFiles());
+        if (roots.isEmpty()) {
+            batcher.flush();
+            completed = !terminated.get();
+            return;
+        }
+        int concurrency = Math.min(Constants.ROOT_CONCURRENCY, roots.size());
+        List<String> candidates = narrowed != null ? narrowed
+                : matcher.isIndexable()
+                ? TrigramIndexes.getDefault().narrow(roots,
+                        matcher.getSearchTerm(), matcher.isLiteral(),
+                        matcher.isCaseSensitive())
+                : null;
+        if (candidates == null && isFileList(roots)) {
+            // files of previous results, one process per file would be slow
+            candidates = roots;
+        }
         try {
+            if (candidates != null) {
+                searchCandidates(listener, candidates);
+            } else if (concurrency > 1) {
+                searchRoots(listener, roots, concurrency);
+            } else {
+                search(listener, roots, 0, Runnable::run);
+            }
+        } finally {
+            batcher.flush();
+        }
+        completed = !terminated.get();
+    }
+
+    /**
+     * Drops the roots that are files not matching the file name pattern, or
+     * ignored. rg does not filter files given explicitly, like those of the
+     * search in results.
+     */
+    private List<String> filterFiles(List<String> roots) {
+        Pattern names = basicSearchCriteria.isFileNamePatternUsable()
+                ? basicSearchCriteria.getFileNamePattern() : null;
+        IgnoreListPanel.IgnoreListManager ignoreList =
+                basicSearchCriteria.isUseIgnoreList()
+                ? new IgnoreListPanel.IgnoreListManager(
+                        FindDialogMemory.getDefault().getIgnoreList())
+                : null;
+        if (names == null && ignoreList == null) {
+            return roots;
+        }
+        List<String> searched = new ArrayList<>(roots.size());
+        for (String root : roots) {
+            File file = new File(root);
+            if (file.isFile()) {
+                if (names != null && !(basicSearchCriteria.isFileNameRegexp()
+                        ? names.matcher(file.getPath()).find()
+                        : names.matcher(file.getName()).matches())) {
+                    continue;
+                }
+                FileObject fo = FileUtil.toFileObject(file);
+                if (ignoreList != null && fo != null
+                        && ignoreList.isIgnored(fo)) {
+                    continue;
+                }
+            }
+            searched.add(root);
+        }
+        return searched;
+    }
 
-            BufferedReader reader = matcher.getReader();
+    /**
+     * Whether the roots are several plain files, not folders.
+     */
+    private static boolean isFileList(List<String> roots) {
+        if (roots.size() < 2) {
+            return false;
+        }
+        for (String root : roots) {
+            if (!new File(root).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-            String line;
-            FileObject fo = null;
-            Def def = null;
-            while ((line = reader.readLine()) != null) {
+    /**
+     * Narrows this search to the files found by a previous search, if the
+     * pattern of this search refines the previous pattern and the previous
+     * search has finished and still shows all the files it found. Must be
+     * called before the search starts and before the results of the previous
+     * search are closed.
+     *
+     * @return whether the search was narrowed
+     */
+    boolean narrowTo(BasicComposition previous) {
+        if (!previous.completed || previous.terminated.get()
+                || previous.displayer == null
+                || !matcher.refines(previous.matcher)) {
+            return false;
+        }
+        ResultModel model = ((ResultDisplayer) previous.displayer)
+                .getResultModel();
+        if (!model.isComplete()) {
+            return false;
+        }
+        List<String> files = new ArrayList<>(model.size());
+        for (MatchingObject mo : model.getMatchingObjects()) {
+            File file = FileUtil.toFile(mo.getFileObject());
+            if (file == null) {
+                return false;
+            }
+            files.add(file.getPath());
+        }
+        narrowed = files;
+        return true;
+    }
 
-                try {
-                    RipGrepMatcher.RipGrepOutput jsonOutput = mapper.readValue(line, RipGrepMatcher.RipGrepOutput.class);
-
-                    if (jsonOutput != null) {
-
-                        String type = jsonOutput.getType();
-                        RipGrepMatcher.RipGrepOutput.Data data = jsonOutput.getData();
-
-                        switch (type) {
-                            case "begin":
-                                listener.fileContentMatchingStarted(data.getPath().getText());
-                                fo = FileUtil.toFileObject(new File(data.getPath().getText()));
-                                def = matcher.check(fo, listener);
-                                break;
-                            case "match":
-                                List<TextDetail> details = matcher.getDetails(fo, data);
-                                def.getTextDetails().addAll(details);
-                                break;
-                            case "end":
-                                getSearchResultsDisplayer().addMatchingObject(def);
-                                break;
-                            default:
-                                break;
-                        }
+    /**
+     * Searches the files selected by the index, passing as many of them to
+     * one rg process as fit a short command line.
+     */
+    private void searchCandidates(SearchListener listener,
+            List<String> candidates) {
+        int from = 0;
+        int length = 0;
+        for (int i = 0; i < candidates.size() && !terminated.get(); i++) {
+            int pathLength = candidates.get(i).length() + 1;
+            if (i > from && length + pathLength > CANDIDATES_COMMAND_LENGTH) {
+                search(listener, candidates.subList(from, i), 0, Runnable::run);
+                from = i;
+                length = 0;
+            }
+            length += pathLength;
+        }
+        if (from < candidates.size() && !terminated.get()) {
+            search(listener, candidates.subList(from, candidates.size()), 0,
+                    Runnable::run);
+        }
+    }
 
+    /**
+     * Searches every root by its own rg process, at most {@code concurrency}
+     * of them at once. Results of the processes are merged into a single
+     * queue that is consumed by the calling thread, so that the listener and
+     * the displayer are still used by one thread only. Results of one root
+     * keep their order.
+     */
+    private void searchRoots(SearchListener listener, List<String> roots,
+            int concurrency) {
+
+        int threads = Math.max(1,
+                Runtime.getRuntime().availableProcessors() / concurrency);
+        BlockingQueue<Runnable> merged = new ArrayBlockingQueue<>(
+                MERGE_QUEUE_CAPACITY);
+        AtomicInteger running = new AtomicInteger(roots.size());
+        Consumer<Runnable> sink = (Runnable r) -> {
+            try {
+                while (!terminated.get() && !merged.offer(r,
+                        MERGE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    // wait for the consumer
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        RequestProcessor rp = new RequestProcessor(
+                BasicComposition.class.getName(), concurrency);
+        for (String root : roots) {
+            rp.post(() -> {
+                try {
+                    if (!terminated.get()) {
+                        search(listener, Collections.singletonList(root),
+                                threads, sink);
                     }
-                    if (terminated.get()) {
-                        break;
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+        try {
+            while (!terminated.get()) {
+                Runnable r = merged.poll(MERGE_POLL_INTERVAL_MS,
+                        TimeUnit.MILLISECONDS);
+                if (r != null) {
+                    r.run();
+                } else if (running.get() == 0) {
+                    // all roots finished, deliver what was queued meanwhile
+                    while (!terminated.get()
+                            && (r = merged.poll()) != null) {
+                        r.run();
                     }
-                } catch (JsonProcessingException ex) {
-                    listener.generalError(new Throwable(line));
+                    break;
                 }
             }
+        } catch (InterruptedException ex) {
+            terminate();
+            Thread.currentThread().interrupt();
+        } finally {
+            rp.shutdown();
+        }
+    }
 
+    /**
+     * Runs one rg process on the given scope and passes its results to the
+     * sink, in the order rg reports them.
+     *
+     * <p>The error output of rg is read by another thread. Its diagnostics
+     * are queued and passed to the sink together with the next result, or
+     * when the process ends, so that the listener is only used through the
+     * sink.</p>
+     */
+    private void search(SearchListener listener, List<String> scope,
+            int threads, Consumer<Runnable> sink) {
+
+        Process process = matcher.getProcess(scope, threads);
+        if (process == null) {
+            return;
+        }
+        Queue<RipGrepDiagnostic> diagnostics = new ConcurrentLinkedQueue<>();
+        RequestProcessor.Task errors = ERRORS_RP.post(() -> {
+            try {
+                RipGrepDiagnostic.readAll(process.getErrorStream(),
+                        diagnostics::add);
+            } catch (IOException ex) {
+                // the process was destroyed
+            }
+        });
+        try {
+            readResults(process.getInputStream(), listener, sink,
+                    (Def found) -> {
+                        report(diagnostics, listener, sink);
+                        sink.accept(() -> batcher.add(found));
+                    });
+            if (!terminated.get()) {
+                errors.waitFinished(ERRORS_TIMEOUT_MS);
+                report(diagnostics, listener, sink);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (JsonProcessingException ex) {
+            sink.accept(() -> listener.generalError(ex));
         } catch (IOException ex) {
-            listener.generalError(ex);
-            Exceptions.printStackTrace(ex);
+            if (!terminated.get()) {
+                sink.accept(() -> listener.generalError(ex));
+                Exceptions.printStackTrace(ex);
+            }
+        } finally {
+            matcher.reclaim(process);
+        }
+    }
+
+    /**
+     * Searches the given files and folders of the scope again, in the calling
+     * thread. The search may have been terminated already.
+     *
+     * @return Objects found, in the order rg reports them.
+     */
+    public List<Def> searchAgain(List<String> paths) throws IOException {
+        List<Def> found = new ArrayList<>();
+        SearchListener listener = new SearchListener() {
+        };
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        for (int i = 0; i < paths.size(); i += SEARCH_AGAIN_PATHS) {
+            Process process = matcher.getProcess(paths.subList(i,
+                    Math.min(paths.size(), i + SEARCH_AGAIN_PATHS)), 0);
+            if (process == null) {
+                continue;
+            }
+            discardErrors(process);
+            try {
+                readResults(process.getInputStream(), listener, Runnable::run,
+                        found::add, stopped);
+            } finally {
+                matcher.reclaim(process);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Files among the changed paths, or under the changed folders, that
+     * this search would search. rg does not apply file name patterns,
+     * excludes and ignore files to paths given explicitly, so the paths are
+     * checked first: the nearest folder of each path that rg walks into, a
+     * folder of the scope or of a found file, is listed with the filters of
+     * the search, as deep as the path lies. Paths outside the scope are
+     * dropped.
+     *
+     * @param walked Folders of found files and their parents.
+     */
+    public List<String> filterSearched(List<String> paths, Set<String> walked)
+            throws IOException {
+        Set<String> roots = new HashSet<>(matcher.getScopeFiles());
+        Set<String> searched = new LinkedHashSet<>();
+        Set<String> files = new HashSet<>();
+        List<String> folders = new ArrayList<>();
+        Map<String, Integer> walks = new LinkedHashMap<>();
+        for (String path : paths) {
+            File file = new File(path);
+            boolean folder = file.isDirectory();
+            if (!folder && roots.contains(path)) {
+                searched.add(path);
+                continue;
+            }
+            File parent = folder ? file : file.getParentFile();
+            int depth = folder ? -1 : 1;
+            while (parent != null && !roots.contains(parent.getPath())
+                    && !walked.contains(parent.getPath())) {
+                parent = parent.getParentFile();
+                depth = depth < 0 ? depth : depth + 1;
+            }
+            if (parent == null) {
+                continue;
+            }
+            if (folder) {
+                folders.add(path + File.separator);
+            } else {
+                files.add(path);
+            }
+            walks.merge(parent.getPath(), depth, (Integer a, Integer b)
+                    -> a < 0 || b < 0 ? -1 : Math.max(a, b));
+        }
+        for (Map.Entry<String, Integer> walk : walks.entrySet()) {
+            listFiles(walk.getKey(), walk.getValue(), (String path) -> {
+                if (files.contains(path) || isUnder(path, folders)) {
+                    searched.add(path);
+                }
+            });
+        }
+        return new ArrayList<>(searched);
+    }
+
+    /**
+     * Files of the scope that this search would search and that were
+     * modified since the given time, in the calling thread.
+     */
+    public List<String> findModified(long since) throws IOException {
+        List<String> modified = new ArrayList<>();
+        for (String root : matcher.getScopeFiles()) {
+            File file = new File(root);
+            if (!file.isDirectory()) {
+                if (file.lastModified() >= since) {
+                    modified.add(root);
+                }
+                continue;
+            }
+            listFiles(root, -1, (String path) -> {
+                if (new File(path).lastModified() >= since) {
+                    modified.add(path);
+                }
+            });
+        }
+        return modified;
+    }
+
+    /**
+     * Passes the files under the folder that this search would search to
+     * the consumer.
+     *
+     * @param maxDepth How deep to descend, -1 for no limit.
+     */
+    private void listFiles(String folder, int maxDepth,
+            Consumer<String> consumer) throws IOException {
+        Process process = matcher.getFilesProcess(folder, maxDepth);
+        discardErrors(process);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(),
+                        StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                consumer.accept(line);
+            }
+        } finally {
+            matcher.reclaim(process);
+        }
+    }
+
+    private static boolean isUnder(String path, List<String> folders) {
+        for (String folder : folders) {
+            if (path.startsWith(folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lets rg compute the replacements of the matches in the files, in the
+     * calling thread. Replacements are passed to the consumer in the order
+     * of the matches, those of one file one after another.
+     *
+     * @param replacement Replacement in rg syntax.
+     */
+    public void readReplacements(List<String> paths, String replacement,
+            Consumer<RipGrepReplacement> consumer) throws IOException {
+        for (int i = 0; i < paths.size(); i += SEARCH_AGAIN_PATHS) {
+            Process process = matcher.getReplacementProcess(paths.subList(i,
+                    Math.min(paths.size(), i + SEARCH_AGAIN_PATHS)),
+                    replacement);
+            discardErrors(process);
+            try {
+                RipGrepReplacement.readAll(process.getInputStream(),
+                        consumer);
+            } finally {
+                matcher.reclaim(process);
+            }
+        }
+    }
+
+    /**
+     * Reads the error output of a process run after the search, the
+     * diagnostics were reported by the search already.
+     */
+    private static void discardErrors(Process process) {
+        ERRORS_RP.post(() -> {
+            try {
+                RipGrepDiagnostic.readAll(process.getErrorStream(),
+                        (RipGrepDiagnostic d) -> {
+                        });
+            } catch (IOException ex) {
+                // the process was destroyed
+            }
+        });
+    }
+
+    /**
+     * Passes queued rg diagnostics to the listener, through the sink.
+     */
+    private static void report(Queue<RipGrepDiagnostic> diagnostics,
+            SearchListener listener, Consumer<Runnable> sink) {
+
+        RipGrepDiagnostic d;
+        while ((d = diagnostics.poll()) != null) {
+            RipGrepDiagnostic diagnostic = d;
+            switch (diagnostic.getKind()) {
+                case FILE_ERROR:
+                    sink.accept(() -> listener.fileContentMatchingError(
+                            diagnostic.getPath(),
+                            new IOException(diagnostic.getMessage())));
+                    break;
+                case FILE_SKIPPED:
+                    sink.accept(() -> listener.fileSkipped(
+                            new File(diagnostic.getPath()).toURI(), null,
+                            diagnostic.getMessage()));
+                    break;
+                default:
+                    sink.accept(() -> listener.generalError(
+                            new IOException(diagnostic.getMessage())));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads rg JSON output and passes the listener notifications to the sink
+     * and the found objects to the results consumer, in the order rg reports
+     * them.
+     */
+    void readResults(InputStream output, SearchListener listener,
+            Consumer<Runnable> sink, Consumer<Def> results) throws IOException {
+        readResults(output, listener, sink, results, terminated);
+    }
+
+    private void readResults(InputStream output, SearchListener listener,
+            Consumer<Runnable> sink, Consumer<Def> results,
+            AtomicBoolean stop) throws IOException {
+
+        try (RipGrepJsonDecoder decoder = new RipGrepJsonDecoder(output)) {
+
+            RipGrepJsonDecoder.Event event;
+            FileObject fo = null;
+            Def def = null;
+            while ((event = decoder.next()) != null) {
+
+                switch (event) {
+                    case BEGIN:
+                        String path = decoder.getPath();
+                        sink.accept(() -> listener.fileContentMatchingStarted(path));
+                        fo = FileUtil.toFileObject(new File(path));
+                        def = matcher.check(fo, listener);
+                        break;
+                    case MATCH:
+                        if (def != null) {
+                            matcher.addDetails(def.getMatches(), decoder);
+                        }
+                        break;
+                    case END:
+                        if (def != null) {
+                            results.accept(def);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                if (stop.get()) {
+                    break;
+                }
+            }
         }
     }
 
@@ -228,6 +729,69 @@ public class BasicComposition extends SearchComposition<MatchingObject.Def> {
         }
     }
 
+    /**
+     * Presenter of a search in the given files found by this search. The
+     * dialog opens with the criteria of this search and the files as the
+     * scope.
+     */
+    public SearchProvider.Presenter createResultsPresenter(
+            List<FileObject> files) {
+        return BasicSearchProvider.createBasicPresenter(false,
+                basicSearchCriteria.getSearchPattern(), null, null,
+                basicSearchCriteria.getSearcherOptions(),
+                basicSearchCriteria.isUseIgnoreList(), "results",     //NOI18N
+                new ResultsScopeDefinition(files, scopeDisplayName));
+    }
+
+    /**
+     * Scope of the files found by a previous search.
+     */
+    private static class ResultsScopeDefinition extends SearchScopeDefinition {
+
+        private final SearchInfo searchInfo;
+        private final String displayName;
+
+        ResultsScopeDefinition(List<FileObject> files,
+                String scopeDisplayName) {
+            this.searchInfo = SearchInfoUtils.createSearchInfoForRoots(
+                    files.toArray(new FileObject[0]));
+            String prefix = UiUtils.getText("LBL_ScopeResultsName");   //NOI18N
+            // results of a search in results keep the original name
+            this.displayName = scopeDisplayName == null ? prefix
+                    : scopeDisplayName.startsWith(prefix) ? scopeDisplayName
+                    : prefix + ": " + scopeDisplayName;                 //NOI18N
+        }
+
+        @Override
+        public String getTypeId() {
+            return "results";                                           //NOI18N
+        }
+
+        @Override
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public boolean isApplicable() {
+            return true;
+        }
+
+        @Override
+        public SearchInfo getSearchInfo() {
+            return searchInfo;
+        }
+
+        @Override
+        public int getPriority() {
+            return 0;
+        }
+
+        @Override
+        public void clean() {
+        }
+    }
+
     public SearchInfo getSearchInfo() {
         return searchInfo;
     }
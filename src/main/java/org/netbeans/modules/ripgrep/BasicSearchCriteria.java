@@ -46,6 +46,7 @@ public final class BasicSearchCriteria {
     private SearchScopeOptions searcherOptions = SearchScopeOptions.create();
     private String replaceExpr;
     private String replaceString;
+    private volatile ReplacementTemplate replaceTemplate;
     private boolean preserveCase;
     private boolean textPatternSpecified = false;
     private boolean fileNamePatternSpecified = false;
@@ -398,6 +399,44 @@ public final class BasicSearchCriteria {
         return replaceString;
     }
 
+    /**
+     * Returns the replacement string parsed for the groups of the text
+     * pattern. It is parsed again only when the pattern or the replacement
+     * change.
+     *
+     * @return the template, or {@code null} if no replace string or no valid
+     * text pattern has been specified
+     */
+    ReplacementTemplate getReplaceTemplate() {
+        Pattern pattern = getTextPattern();
+        String replacement = getReplaceString();
+        if (pattern == null || replacement == null) {
+            return null;
+        }
+        ReplacementTemplate template = replaceTemplate;
+        if (template == null || !template.isFor(replacement, pattern)) {
+            template = ReplacementTemplate.parse(replacement, pattern);
+            replaceTemplate = template;
+        }
+        return template;
+    }
+
+    /**
+     * Returns the replacement in the syntax of {@code rg --replace}.
+     *
+     * @return the replacement, or {@code null} if rg cannot compute it
+     * because no replacement is specified or the case is preserved
+     */
+    String getRipGrepReplacement() {
+        if (searchPattern.isRegExp()) {
+            ReplacementTemplate template = getReplaceTemplate();
+            return template == null ? null : template.toRipGrep();
+        } else if (replaceExpr == null || preserveCase) {
+            return null;
+        }
+        return replaceExpr.replace("$", "$$");                          //NOI18N
+    }
+
     /**
      * Sets a replacement string/expression.
      *
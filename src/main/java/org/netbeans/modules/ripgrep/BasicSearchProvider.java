@@ -18,6 +18,7 @@
  */
 package org.netbeans.modules.ripgrep;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -106,7 +107,7 @@ public class BasicSearchProvider extends SearchProvider {
     /**
      *
      */
-    private static class BasicSearchPresenter
+    static class BasicSearchPresenter
             extends BasicSearchProvider.Presenter {
 
         BasicSearchForm form = null;
@@ -173,8 +174,28 @@ public class BasicSearchProvider extends SearchProvider {
             }
 
             form.onOk();
-            BasicSearchCriteria basicSearchCriteria
-                    = form.getBasicSearchCriteria();
+            return compose(form.getBasicSearchCriteria());
+        }
+
+        /**
+         * Composes a search of a copy of the current criteria, without
+         * storing them in the history. Used for searches started while the
+         * pattern is typed, when the form can change during the search.
+         *
+         * @return the search, {@code null} if it cannot be started now
+         */
+        BasicComposition composeIncrementalSearch() {
+            if (Manager.getInstance().mayStartSearching() != null) {
+                return null;
+            }
+            BasicSearchCriteria basicSearchCriteria = new BasicSearchCriteria(
+                    form.getBasicSearchCriteria());
+            basicSearchCriteria.onOk();
+            return compose(basicSearchCriteria);
+        }
+
+        private BasicComposition compose(
+                BasicSearchCriteria basicSearchCriteria) {
 
             SearchScopeOptions so = basicSearchCriteria.getSearcherOptions();
             if (basicSearchCriteria.isUseIgnoreList()) {
@@ -199,8 +220,11 @@ public class BasicSearchProvider extends SearchProvider {
                     .setFileNamePattern(fileNamePatternExpr)
                     .setGlobeInclude(false)
                     .setSearchInGeneratedSources(basicSearchCriteria.isSearchInGenerated())
-                    .setUseIgnoreList(false)
+                    .setUseIgnoreList(basicSearchCriteria.isUseIgnoreList())
                     .addIncludes(Arrays.asList(fileNamePatternExpr.split(",")));
+            if (basicSearchCriteria.isUseIgnoreList()) {
+                applyIgnoreList(am);
+            }
 
             am.setStrict(isReplacing());
             return new BasicComposition(
@@ -302,6 +326,24 @@ public class BasicSearchProvider extends SearchProvider {
         }
     }
 
+    /**
+     * Passes the global ignore list to rg. Ignored folders, files and name
+     * patterns become exclude globs, so that rg does not read them at all.
+     * Other items, like regular expressions, are checked on the found files.
+     */
+    private static void applyIgnoreList(RipGrepMatcher matcher) {
+        List<String> roots = matcher.getScopeFiles();
+        // anchored globs are resolved against the working directory
+        File root = roots.isEmpty() ? null : new File(roots.get(0)).toPath()
+                .toAbsolutePath().getRoot().toFile();
+        IgnoreListManager ignoreList = new IgnoreListManager(
+                FindDialogMemory.getDefault().getIgnoreList());
+        IgnoreListManager others = ignoreList.withoutGlobs(root);
+        matcher.addExcludes(ignoreList.toGlobs(root))
+                .setWorkingDirectory(root)
+                .setIgnoredFilter(others.isEmpty() ? null : others::isIgnored);
+    }
+
     /**
      * Start a search task with specified parameters.
      */
@@ -18,7 +18,9 @@
  */
 package org.netbeans.modules.ripgrep;
 
+import java.util.prefs.Preferences;
 import org.openide.util.NbBundle;
+import org.openide.util.NbPreferences;
 
 /**
  *
@@ -34,6 +36,99 @@ public final class Constants {
      * maximum total number of detail entries for found objects
      */
     public static final int DETAILS_COUNT_LIMIT = Integer.getInteger("netbeans.search.details.count.limit", 5000);
+    /**
+     * maximum number of rg processes run in parallel by one search, each of
+     * them searching a single search root
+     */
+    public static final int ROOT_CONCURRENCY = Integer.getInteger("netbeans.search.root.concurrency",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    /**
+     * delay in milliseconds between the last file change and the refresh of
+     * watched results
+     */
+    public static final int WATCH_DELAY = Integer.getInteger("netbeans.search.watch.delay", 500);
+    /**
+     * whether results found after a limit was reached are kept on disk,
+     * instead of stopping the search; off unless enabled
+     */
+    public static final boolean LIMIT_OVERFLOW = Boolean.getBoolean("netbeans.search.limit.overflow"); //NOI18N
+    /**
+     * maximum number of found objects kept on disk by one search
+     */
+    public static final int OVERFLOW_COUNT_LIMIT = Integer.getInteger("netbeans.search.limit.overflow.count", 100000);
+    /**
+     * whether rg computes the replacements of the matches shown in the
+     * results of a replace
+     */
+    public static final boolean REPLACE_PREVIEW = !"false".equals( //NOI18N
+            System.getProperty("netbeans.search.replace.preview")); //NOI18N
+    /**
+     * maximum total number of characters of file texts cached for the
+     * preview and the replace
+     */
+    public static final int TEXT_CACHE_SIZE = Integer.getInteger("netbeans.search.text.cache.size", 32 * 1024 * 1024);
+    /**
+     * whether searches are narrowed to the files selected by a trigram index
+     * of the search roots
+     */
+    public static final boolean INDEX = Boolean.getBoolean("netbeans.search.index"); //NOI18N
+    /**
+     * maximum number of files selected by the index, searches of more files
+     * are not narrowed
+     */
+    public static final int INDEX_MAX_CANDIDATES = Integer.getInteger("netbeans.search.index.max.candidates", 5000);
+    /**
+     * delay in milliseconds between the last change of the criteria and the
+     * search started while typing
+     */
+    public static final int INCREMENTAL_DELAY = Integer.getInteger("netbeans.search.incremental.delay", 300);
+
+    private static final String PREF_COUNT_LIMIT = "count.limit"; //NOI18N
+    private static final String PREF_DETAILS_COUNT_LIMIT = "details.count.limit"; //NOI18N
+    private static final String PREF_LIMIT_OVERFLOW = "limit.overflow"; //NOI18N
+    private static final String PREF_INDEX = "index"; //NOI18N
+
+    private static Preferences getPreferences() {
+        return NbPreferences.forModule(Constants.class);
+    }
+
+    /**
+     * Maximum number of found objects for a new search. The module
+     * preferences take precedence over the system property, so the limit can
+     * be changed without restart.
+     */
+    public static int getCountLimit() {
+        return getPreferences().getInt(PREF_COUNT_LIMIT, COUNT_LIMIT);
+    }
+
+    /**
+     * Maximum total number of detail entries for a new search.
+     *
+     * @see #getCountLimit()
+     */
+    public static int getDetailsCountLimit() {
+        return getPreferences().getInt(PREF_DETAILS_COUNT_LIMIT,
+                DETAILS_COUNT_LIMIT);
+    }
+
+    /**
+     * Whether a new search keeps results beyond the limits on disk.
+     *
+     * @see #getCountLimit()
+     */
+    public static boolean isLimitOverflow() {
+        return getPreferences().getBoolean(PREF_LIMIT_OVERFLOW,
+                LIMIT_OVERFLOW);
+    }
+
+    /**
+     * Whether a new search may be narrowed by the trigram index.
+     *
+     * @see #getCountLimit()
+     */
+    public static boolean isIndexEnabled() {
+        return getPreferences().getBoolean(PREF_INDEX, INDEX);
+    }
 
     public enum Limit {
 
@@ -55,7 +150,14 @@ public final class Constants {
         }
 
         String getDisplayName() {
-            return NbBundle.getMessage(Limit.class, bundleKey, value);
+            return getDisplayName(value);
+        }
+
+        /**
+         * Display name for an adjusted value of the limit.
+         */
+        String getDisplayName(int limit) {
+            return NbBundle.getMessage(Limit.class, bundleKey, limit);
         }
 
         public Integer getValue() {
@@ -51,6 +51,7 @@ import org.openide.ErrorManager;
 import org.openide.NotifyDescriptor;
 import org.openide.explorer.ExplorerManager;
 import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
 import org.openide.nodes.Node;
 import org.openide.text.NbDocument;
 import org.openide.util.NbBundle;
@@ -282,7 +283,10 @@ public final class ContextView extends JPanel {
             }
             
             FileObject fo = matchingObj.getFileObject();
-            if (fo.getSize() > FILE_SIZE_LIMIT) {
+            // big files on the disk are shown in windows around the matches
+            boolean windowed = fo.getSize() > FILE_SIZE_LIMIT
+                    && FileUtil.toFile(fo) != null;
+            if (fo.getSize() > FILE_SIZE_LIMIT && !windowed) {
                 Boolean fileApproved = APPROVED_FILES.get(fo);
                 if (allApproved == null && fileApproved == null) {
                     approveFetchingOfBigFile(matchingObj, partIndex);
@@ -303,7 +307,7 @@ public final class ContextView extends JPanel {
                 return;
             }
             
-            requestText(item, displayer);
+            requestText(item, displayer, windowed);
             String description = matchingObj.getDescription();
             lblPath.setText(description);
             lblPath.setToolTipText(description);        //in case it doesn't fit
@@ -318,10 +322,12 @@ public final class ContextView extends JPanel {
      * 
      * @param  item  item to be displayed by the text displayer
      * @param  textDisplayer  displayer that should display the item
+     * @param  windowed  whether only the lines around the item are fetched
      * 
      * @author  Tim Boudreau
      */
-    private void requestText(Item item, TextDisplayer textDisplayer) {
+    private void requestText(Item item, TextDisplayer textDisplayer,
+            boolean windowed) {
         assert EventQueue.isDispatchThread();
         
         synchronized (this) {           //PENDING - review synchronization
@@ -336,7 +342,8 @@ public final class ContextView extends JPanel {
             if (textFetcher == null) {
                 textFetcher = new TextFetcher(item,
                                               textDisplayer,
-                                              requestProcessor);
+                                              requestProcessor,
+                                              windowed);
             }
         }
     }
@@ -430,6 +437,8 @@ public final class ContextView extends JPanel {
     private class Displayer implements TextDisplayer, Runnable {
         
         private TextDetail location;
+        /** number of the first displayed line of the file */
+        private int firstLine = 1;
         
         /**
          * @author  Tim Boudreau
@@ -437,7 +446,8 @@ public final class ContextView extends JPanel {
         @Override
         public void setText(final String text,
                             String mimeType,
-                            final TextDetail location) {
+                            final TextDetail location,
+                            int firstLine) {
             assert EventQueue.isDispatchThread();
             
             if ("content/unknown".equals(mimeType)) {                   //NOI18N
@@ -464,6 +474,7 @@ public final class ContextView extends JPanel {
                 //with it - get out of its way.  Some Swing View classes don't
                 //have accurate position data until they've painted once.
                 this.location = location;
+                this.firstLine = firstLine;
                 EventQueue.invokeLater(this);
             } else {
                 scrollToTop();
@@ -492,7 +503,7 @@ public final class ContextView extends JPanel {
                                 = (StyledDocument) document;
                         int cursorOffset = getCursorOffset(
                                                     (StyledDocument) document,
-                                                    location.getLine() - 1);
+                                                    location.getLine() - firstLine);
                         int startOff = cursorOffset + location.getColumn() - 1;
                         int endOff = startOff + location.getMarkLength();
                         editorPane.setSelectionStart(startOff);
@@ -137,6 +137,9 @@ public final class FindDialogMemory {
 
     private boolean openInNewTab;
 
+    /** Whether the search runs again when the criteria change. */
+    private boolean searchWhileTyping;
+
     /** Preferences node for storing history info */
     private static Preferences prefs;
     /** Name of preferences node where we persist history */
@@ -163,6 +166,7 @@ public final class FindDialogMemory {
     private static final String PROP_RESULTS_VIEW_MODE = "results_view_mode"; //NOI18N
     private static final String PROP_PROVIDER = "provider"; //NOI18N
     private static final String PROP_OPEN_IN_NEW_TAB = "open_in_new_tab"; //NOI18N
+    private static final String PROP_SEARCH_WHILE_TYPING = "search_while_typing"; //NOI18N
     /** Creates a new instance of FindDialogMemory */
     private FindDialogMemory() {
         prefs = NbPreferences.forModule(FindDialogMemory.class).node(PREFS_NODE);
@@ -211,6 +215,7 @@ public final class FindDialogMemory {
         resultsViewMode = prefs.get(PROP_RESULTS_VIEW_MODE, null);
         provider = prefs.get(PROP_PROVIDER, null);
         openInNewTab = prefs.getBoolean(PROP_OPEN_IN_NEW_TAB, true);
+        searchWhileTyping = prefs.getBoolean(PROP_SEARCH_WHILE_TYPING, false);
         fileNamePatterns = new ArrayList<>(maxFileNamePatternCount);
         ignoreList = new ArrayList<>();
         for(int i=0; i < maxFileNamePatternCount; i++){
@@ -499,4 +504,13 @@ public final class FindDialogMemory {
         this.openInNewTab = openInNewTab;
         prefs.putBoolean(PROP_OPEN_IN_NEW_TAB, openInNewTab);
     }
+
+    public boolean isSearchWhileTyping() {
+        return searchWhileTyping;
+    }
+
+    public void setSearchWhileTyping(boolean searchWhileTyping) {
+        this.searchWhileTyping = searchWhileTyping;
+        prefs.putBoolean(PROP_SEARCH_WHILE_TYPING, searchWhileTyping);
+    }
 }
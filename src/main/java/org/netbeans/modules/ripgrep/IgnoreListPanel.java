@@ -24,9 +24,14 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import javax.swing.*;
 import javax.swing.event.ListSelectionEvent;
@@ -39,6 +44,7 @@ import org.openide.awt.Mnemonics;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.util.NbBundle;
+import org.openide.util.Utilities;
 
 /**
  *
@@ -544,12 +550,47 @@ public final class IgnoreListPanel extends javax.swing.JPanel {
         jd.getRootPane().getActionMap().put(actionKey, deleteAction);
     }
 
+    /**
+     * Decides whether files are ignored. The ignore list is compiled once:
+     * name patterns into a single pattern, regular expressions into as few
+     * patterns as possible and ignored files and folders into a tree of path
+     * names. Results for folders are cached, so that checking a file costs
+     * at most one step per folder above it.
+     */
     static class IgnoreListManager {
 
-        List<IgnoredItemDefinition> items;
+        private final List<IgnoredItemDefinition> items;
+        /** all name patterns, {@code null} if there are none */
+        private final Pattern names;
+        /** regular expressions matched against full paths */
+        private final List<Pattern> paths = new ArrayList<>();
+        /** ignored files and folders, by path names from the root */
+        private final PathNode ignoredPaths = new PathNode();
+        /** folders ignored by a name pattern or a regular expression */
+        private final Map<FileObject, Boolean> ignoredFolders =
+                new ConcurrentHashMap<>();
 
         public IgnoreListManager(List<String> ignoreList) {
-            items = new LinkedList<>();
+            this(parse(ignoreList));
+        }
+
+        private IgnoreListManager(IgnoredItemDefinition[] items) {
+            this.items = Arrays.asList(items);
+            StringBuilder namesRegexp = new StringBuilder();
+            StringBuilder pathsRegexp = new StringBuilder();
+            for (IgnoredItemDefinition iid : items) {
+                iid.compile(this, namesRegexp, pathsRegexp);
+            }
+            names = namesRegexp.length() == 0
+                    ? null : Pattern.compile(namesRegexp.toString());
+            if (pathsRegexp.length() > 0) {
+                paths.add(Pattern.compile(pathsRegexp.toString()));
+            }
+        }
+
+        private static IgnoredItemDefinition[] parse(
+                List<String> ignoreList) {
+            List<IgnoredItemDefinition> items = new ArrayList<>();
             for (String s : ignoreList) {
                 IgnoreListItem ili = IgnoreListItem.fromString(s);
                 switch (ili.type) {
@@ -565,38 +606,247 @@ public final class IgnoreListPanel extends javax.swing.JPanel {
                         break;
                 }
             }
+            return items.toArray(new IgnoredItemDefinition[0]);
         }
 
+        /**
+         * Checks whether the file or folder is ignored, either by itself or
+         * because a folder containing it is ignored.
+         */
         boolean isIgnored(FileObject fo) {
-            for (IgnoredItemDefinition iid : items) {
-                if (iid.isIgnored(fo)) {
-                    return true;
+            File file = FileUtil.toFile(fo);
+            if (file != null && ignoredPaths.containsPrefixOf(file)) {
+                return true;
+            }
+            if (matches(fo, file)) {
+                return true;
+            }
+            FileObject parent = fo.getParent();
+            return parent != null && isIgnoredFolder(parent);
+        }
+
+        private boolean isIgnoredFolder(FileObject folder) {
+            Boolean ignored = ignoredFolders.get(folder);
+            if (ignored == null) {
+                FileObject parent = folder.getParent();
+                ignored = matches(folder, FileUtil.toFile(folder))
+                        || (parent != null && isIgnoredFolder(parent));
+                ignoredFolders.put(folder, ignored);
+            }
+            return ignored;
+        }
+
+        /**
+         * Checks the name patterns and regular expressions.
+         */
+        private boolean matches(FileObject fo, File file) {
+            if (names != null && names.matcher(fo.getNameExt()).matches()) {
+                return true;
+            }
+            if (!paths.isEmpty()) {
+                String path = file != null ? file.getPath() : fo.getPath();
+                for (Pattern p : paths) {
+                    if (p.matcher(path).find()) {
+                        return true;
+                    }
                 }
             }
             return false;
         }
 
-        private abstract class IgnoredItemDefinition {
+        boolean isEmpty() {
+            return items.isEmpty();
+        }
 
-            abstract boolean isIgnored(FileObject obj);
+        /**
+         * Globs for rg {@code --glob} excludes, without the leading
+         * {@code !}. Name patterns match at any depth. Files and folders are
+         * anchored to {@code root}, which has to be the working directory of
+         * rg, so ignored folders are not read at all.
+         *
+         * @param root File system root rg is started in.
+         * @see #withoutGlobs(File)
+         */
+        List<String> toGlobs(File root) {
+            List<String> globs = new ArrayList<>();
+            for (IgnoredItemDefinition iid : items) {
+                iid.addGlobs(root, globs);
+            }
+            return globs;
         }
 
-        private class IgnoredPatternDefinition extends IgnoredItemDefinition {
+        /**
+         * Manager for the items that {@link #toGlobs(File)} cannot express
+         * as globs. They have to be checked by {@link #isIgnored(FileObject)}
+         * as before.
+         */
+        IgnoreListManager withoutGlobs(File root) {
+            List<IgnoredItemDefinition> others = new ArrayList<>();
+            for (IgnoredItemDefinition iid : items) {
+                if (!iid.addGlobs(root, new ArrayList<>())) {
+                    others.add(iid);
+                }
+            }
+            return new IgnoreListManager(
+                    others.toArray(new IgnoredItemDefinition[0]));
+        }
+
+        /**
+         * Escapes wildcards and brackets in a name, for rg globs. Names
+         * containing backslashes are not supported, see
+         * {@link #isGlobSafe(String)}.
+         */
+        private static String escapeGlob(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 8);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if ("*?[{}".indexOf(c) >= 0) {                          //NOI18N
+                    sb.append('[').append(c).append(']');
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
 
-            private Pattern p;
+        /**
+         * Backslashes are escapes or separators depending on the platform,
+         * a leading {@code !} would negate the glob.
+         */
+        private static boolean isGlobSafe(String name) {
+            return name.indexOf('\\') < 0 && !name.startsWith("!");   //NOI18N
+        }
+
+        /**
+         * Appends a pattern to an alternation, keeping its flags.
+         */
+        private static void appendAlternative(StringBuilder alternation,
+                Pattern p) {
+            if (alternation.length() > 0) {
+                alternation.append('|');
+            }
+            alternation.append("(?");                                   //NOI18N
+            if ((p.flags() & Pattern.CASE_INSENSITIVE) != 0) {
+                alternation.append('i');
+            }
+            if ((p.flags() & Pattern.UNICODE_CASE) != 0) {
+                alternation.append('u');
+            }
+            alternation.append(':').append(p.pattern()).append(')');
+        }
+
+        /**
+         * Node of the tree of ignored paths. Names are compared as the file
+         * system does.
+         */
+        private static class PathNode {
+
+            private final Map<String, PathNode> children = new HashMap<>();
+            private boolean ignored;
+
+            void add(File file) {
+                Path path = file.toPath().toAbsolutePath();
+                if (path.getRoot() == null) {
+                    return;
+                }
+                PathNode node = child(path.getRoot().toString(), true);
+                for (Path name : path) {
+                    node = node.child(name.toString(), true);
+                }
+                node.ignored = true;
+            }
+
+            /**
+             * Checks whether the file or one of its parents is in the tree.
+             */
+            boolean containsPrefixOf(File file) {
+                if (children.isEmpty()) {
+                    return false;
+                }
+                Path path = file.toPath();
+                if (path.getRoot() == null) {
+                    return false;
+                }
+                PathNode node = child(path.getRoot().toString(), false);
+                for (int i = 0; node != null && !node.ignored
+                        && i < path.getNameCount(); i++) {
+                    node = node.child(path.getName(i).toString(), false);
+                }
+                return node != null && node.ignored;
+            }
+
+            private PathNode child(String name, boolean create) {
+                String key = Utilities.isWindows()
+                        ? name.toLowerCase(Locale.ROOT) : name;
+                PathNode child = children.get(key);
+                if (child == null && create) {
+                    child = new PathNode();
+                    children.put(key, child);
+                }
+                return child;
+            }
+        }
+
+        private abstract static class IgnoredItemDefinition {
+
+            /**
+             * Adds this item to the compiled ignore list.
+             *
+             * @param manager Manager being compiled.
+             * @param names Alternation of name patterns.
+             * @param paths Alternation of regular expressions without
+             * capturing groups.
+             */
+            abstract void compile(IgnoreListManager manager,
+                    StringBuilder names, StringBuilder paths);
+
+            /**
+             * Adds globs excluding this item.
+             *
+             * @return {@code false} if this item cannot be expressed by globs.
+             */
+            boolean addGlobs(File root, List<String> globs) {
+                return false;
+            }
+        }
+
+        private static class IgnoredPatternDefinition extends IgnoredItemDefinition {
+
+            private final String pattern;
 
             public IgnoredPatternDefinition(String pattern) {
-                p = RegexpUtil.makeFileNamePattern(
-                        SearchScopeOptions.create(pattern, false));
+                this.pattern = pattern;
+            }
+
+            @Override
+            void compile(IgnoreListManager manager, StringBuilder names,
+                    StringBuilder paths) {
+                appendAlternative(names, RegexpUtil.makeFileNamePattern(
+                        SearchScopeOptions.create(pattern, false)));
             }
 
             @Override
-            boolean isIgnored(FileObject obj) {
-                return p.matcher(obj.getNameExt()).matches();
+            boolean addGlobs(File root, List<String> globs) {
+                List<String> names = new ArrayList<>();
+                for (String name : pattern.split("[,\\s]+")) {         //NOI18N
+                    if (name.isEmpty()) {
+                        continue;
+                    }
+                    if (name.indexOf('/') >= 0 || !isGlobSafe(name)
+                            || name.indexOf('[') >= 0
+                            || name.indexOf('{') >= 0) {
+                        return false;
+                    }
+                    // a glob without a slash matches names at any depth
+                    names.add(escapeGlob(name).replace("[*]", "*")      //NOI18N
+                            .replace("[?]", "?"));                      //NOI18N
+                }
+                globs.addAll(names);
+                return !names.isEmpty();
             }
         }
 
-        private class IgnoredRegexpDefinition extends IgnoredItemDefinition {
+        private static class IgnoredRegexpDefinition extends IgnoredItemDefinition {
 
             private Pattern p;
 
@@ -605,28 +855,48 @@ public final class IgnoreListPanel extends javax.swing.JPanel {
             }
 
             @Override
-            boolean isIgnored(FileObject obj) {
-                File file = FileUtil.toFile(obj);
-                if (file != null) {
-                    return p.matcher(file.getPath()).find();
+            void compile(IgnoreListManager manager, StringBuilder names,
+                    StringBuilder paths) {
+                if (p.matcher("").groupCount() == 0) {                  //NOI18N
+                    appendAlternative(paths, p);
                 } else {
-                    return p.matcher(obj.getPath()).find();
+                    // back references would be renumbered in an alternation
+                    manager.paths.add(p);
                 }
             }
         }
 
-        private class IgnoredDirDefinition extends IgnoredItemDefinition {
+        private static class IgnoredDirDefinition extends IgnoredItemDefinition {
 
-            FileObject dir;
+            private final File file;
 
             public IgnoredDirDefinition(String path) {
-                dir = FileUtil.toFileObject(new File(path));
+                file = new File(path);
+            }
+
+            @Override
+            void compile(IgnoreListManager manager, StringBuilder names,
+                    StringBuilder paths) {
+                manager.ignoredPaths.add(file);
             }
 
             @Override
-            boolean isIgnored(FileObject obj) {
-                return FileUtil.isParentOf(dir, obj) || obj.equals(dir);
+            boolean addGlobs(File root, List<String> globs) {
+                Path path = file.toPath().toAbsolutePath();
+                if (root == null || !root.toPath().equals(path.getRoot())
+                        || path.getNameCount() == 0) {
+                    return false;
+                }
+                StringBuilder glob = new StringBuilder();
+                for (Path name : path) {
+                    if (name.toString().indexOf('\\') >= 0) {
+                        return false;
+                    }
+                    glob.append('/').append(escapeGlob(name.toString()));
+                }
+                globs.add(glob.toString());
+                return true;
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -18,7 +18,8 @@
  */
 package org.netbeans.modules.ripgrep;
 
-import org.openide.modules.ModuleInstall;
+import org.netbeans.modules.ripgrep.matcher.RipGrepLauncher;
+import org.openide.modules.OnStop;
 import org.openide.windows.OnShowing;
 
 /**
@@ -36,5 +37,18 @@ public class Installer implements Runnable {
     public void run() {
         ActionManager.FindActionManager.getInstance().init();
         ActionManager.ReplaceActionManager.getInstance().init();
+        RipGrepLauncher.getDefault().prewarm();
+    }
+
+    /**
+     * Stops rg processes of searches that are still running.
+     */
+    @OnStop
+    public static final class Stop implements Runnable {
+
+        @Override
+        public void run() {
+            RipGrepLauncher.reclaimAllIfStarted();
+        }
     }
 }
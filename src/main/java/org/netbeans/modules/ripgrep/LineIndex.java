@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Byte offsets of the matching lines of a file, as reported by rg.
+ *
+ * <p>The index is sparse, it only knows the lines rg reported. It lets
+ * previews and navigation seek in the file without reading it from the start
+ * or loading its document.</p>
+ */
+public final class LineIndex {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int size;
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+
+    /**
+     * Records the offset of a line. rg reports lines in ascending order,
+     * lines not following the last known line are ignored.
+     *
+     * @param line Line number, starting at 1.
+     * @param offset Offset of the first byte of the line.
+     */
+    public void add(int line, long offset) {
+        if (size > 0 && lines[size - 1] >= line) {
+            return;
+        }
+        if (size == lines.length) {
+            lines = Arrays.copyOf(lines, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        lines[size] = line;
+        offsets[size] = offset;
+        size++;
+    }
+
+    private int find(int line) {
+        return Arrays.binarySearch(lines, 0, size, line);
+    }
+
+    /**
+     * Offset of the first byte of the line.
+     *
+     * @return The offset, -1 if the line is not known.
+     */
+    public long getOffset(int line) {
+        if (line == 1) {
+            return 0;
+        }
+        int i = find(line);
+        return i < 0 ? -1 : offsets[i];
+    }
+
+    /**
+     * Number of known lines.
+     */
+    public int size() {
+        return size;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(lines[i]);
+            out.writeLong(offsets[i]);
+        }
+    }
+
+    static LineIndex readFrom(DataInput in) throws IOException {
+        LineIndex index = new LineIndex();
+        int count = in.readInt();
+        index.lines = new int[Math.max(INITIAL_CAPACITY, count)];
+        index.offsets = new long[index.lines.length];
+        for (int i = 0; i < count; i++) {
+            index.lines[i] = in.readInt();
+            index.offsets[i] = in.readLong();
+        }
+        index.size = count;
+        return index;
+    }
+}
@@ -117,7 +117,9 @@ public final class Manager {
 
         ResultView resultView = ResultView.getInstance();
         resultView.open();
-        resultView.requestActive();
+        if (!task.isIncremental()) {
+            resultView.requestActive();
+        }
         task.setResultViewPanel(resultView.addTab(task));
         pendingTasks.add(task);
         processNextPendingTask();
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.netbeans.api.search.SearchPattern;
+import org.openide.loaders.DataObject;
+
+/**
+ * Compact storage of the matches found in one file.
+ *
+ * <p>Positions of the matches are kept in primitive arrays, texts of matching
+ * lines are stored once per line. The data object and the search pattern are
+ * shared by all matches. {@link TextDetail}s are only created by
+ * {@link #createDetails()}, when the matches are going to be shown.</p>
+ */
+public final class MatchStore {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private DataObject dataObject;
+    private final SearchPattern searchPattern;
+
+    private int size;
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private int[] markLengths = new int[INITIAL_CAPACITY];
+    private int[] startOffsets = new int[INITIAL_CAPACITY];
+    private int[] endOffsets = new int[INITIAL_CAPACITY];
+    /** Index of the line text of each match in {@link #lineTexts}. */
+    private int[] lineTextIndexes = new int[INITIAL_CAPACITY];
+    /**
+     * Matched texts, {@code null} where the matched text is the marked part
+     * of the line text.
+     */
+    private String[] matchedTexts = new String[INITIAL_CAPACITY];
+
+    private int lineTextCount;
+    private String[] lineTexts = new String[INITIAL_CAPACITY];
+
+    private LineIndex lineIndex = new LineIndex();
+
+    public MatchStore(DataObject dataObject, SearchPattern searchPattern) {
+        this.dataObject = dataObject;
+        this.searchPattern = searchPattern;
+    }
+
+    /**
+     * Adds a match. Consecutive matches passing the same line text instance
+     * share its storage.
+     *
+     * @param line Line number, starting at 1.
+     * @param column Column of the match start, starting at 1.
+     * @param startOffset Offset of the match start in the file.
+     * @param endOffset Offset of the match end in the file.
+     * @param lineText Text of the matching line.
+     * @param matchedText The matched text.
+     */
+    public void add(int line, int column, int startOffset, int endOffset,
+            String lineText, String matchedText) {
+
+        ensureCapacity(size + 1);
+        if (lineTextCount == 0 || lineTexts[lineTextCount - 1] != lineText) {
+            if (lineTextCount == lineTexts.length) {
+                lineTexts = Arrays.copyOf(lineTexts, lineTextCount * 2);
+            }
+            lineTexts[lineTextCount++] = lineText;
+        }
+        int markLength = matchedText.length();
+        lines[size] = line;
+        columns[size] = column;
+        markLengths[size] = markLength;
+        startOffsets[size] = startOffset;
+        endOffsets[size] = endOffset;
+        lineTextIndexes[size] = lineTextCount - 1;
+        matchedTexts[size] = isMarkedText(lineText, column - 1, matchedText)
+                ? null : matchedText;
+        size++;
+    }
+
+    private static boolean isMarkedText(String lineText, int from,
+            String matchedText) {
+        return lineText != null && from >= 0
+                && lineText.regionMatches(from, matchedText, 0,
+                        matchedText.length());
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lines.length) {
+            int newLength = Math.max(capacity, lines.length * 2);
+            lines = Arrays.copyOf(lines, newLength);
+            columns = Arrays.copyOf(columns, newLength);
+            markLengths = Arrays.copyOf(markLengths, newLength);
+            startOffsets = Arrays.copyOf(startOffsets, newLength);
+            endOffsets = Arrays.copyOf(endOffsets, newLength);
+            lineTextIndexes = Arrays.copyOf(lineTextIndexes, newLength);
+            matchedTexts = Arrays.copyOf(matchedTexts, newLength);
+        }
+    }
+
+    /**
+     * Number of stored matches.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public DataObject getDataObject() {
+        return dataObject;
+    }
+
+    /**
+     * Offsets of the matching lines, recorded by the matcher.
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * Sets the data object for details that will be created later.
+     */
+    void setDataObject(DataObject dataObject) {
+        this.dataObject = dataObject;
+    }
+
+    /**
+     * Creates a text detail for the match at the given index.
+     */
+    public TextDetail createDetail(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", size: " + size);             //NOI18N
+        }
+        String lineText = lineTexts[lineTextIndexes[index]];
+        int column = columns[index];
+        int markLength = markLengths[index];
+        String matchedText = matchedTexts[index];
+        if (matchedText == null) {
+            matchedText = lineText.substring(column - 1,
+                    column - 1 + markLength);
+        }
+        TextDetail textDetail = new TextDetail(dataObject, searchPattern);
+        textDetail.setLine(lines[index]);
+        textDetail.setColumn(column);
+        textDetail.setMatchedText(matchedText);
+        textDetail.setStartOffset(startOffsets[index]);
+        textDetail.setEndOffset(endOffsets[index]);
+        textDetail.setMarkLength(markLength);
+        textDetail.setLineText(lineText);
+        return textDetail;
+    }
+
+    /**
+     * Writes the matches, without the data object and the search pattern.
+     *
+     * @see #readFrom(DataInput, DataObject, SearchPattern)
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(lineTextCount);
+        for (int i = 0; i < lineTextCount; i++) {
+            writeString(out, lineTexts[i]);
+        }
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(lines[i]);
+            out.writeInt(columns[i]);
+            out.writeInt(markLengths[i]);
+            out.writeInt(startOffsets[i]);
+            out.writeInt(endOffsets[i]);
+            out.writeInt(lineTextIndexes[i]);
+            writeString(out, matchedTexts[i]);
+        }
+        lineIndex.writeTo(out);
+    }
+
+    /**
+     * Reads matches written by {@link #writeTo(DataOutput)}.
+     */
+    static MatchStore readFrom(DataInput in, DataObject dataObject,
+            SearchPattern searchPattern) throws IOException {
+        MatchStore store = new MatchStore(dataObject, searchPattern);
+        store.lineTextCount = in.readInt();
+        store.lineTexts = new String[Math.max(1, store.lineTextCount)];
+        for (int i = 0; i < store.lineTextCount; i++) {
+            store.lineTexts[i] = readString(in);
+        }
+        int count = in.readInt();
+        store.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            store.lines[i] = in.readInt();
+            store.columns[i] = in.readInt();
+            store.markLengths[i] = in.readInt();
+            store.startOffsets[i] = in.readInt();
+            store.endOffsets[i] = in.readInt();
+            store.lineTextIndexes[i] = in.readInt();
+            store.matchedTexts[i] = readString(in);
+        }
+        store.size = count;
+        store.lineIndex = LineIndex.readFrom(in);
+        return store;
+    }
+
+    /**
+     * {@link DataOutput#writeUTF(String)} is limited to 64 kB, lines can be
+     * longer.
+     */
+    private static void writeString(DataOutput out, String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates text details for all stored matches.
+     */
+    public List<TextDetail> createDetails() {
+        List<TextDetail> details = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            details.add(createDetail(i));
+        }
+        return details;
+    }
+}
@@ -24,14 +24,20 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import static java.util.logging.Level.FINER;
@@ -41,7 +47,9 @@ import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import org.netbeans.api.queries.FileEncodingQuery;
 import org.netbeans.modules.ripgrep.TextDetail.DetailNode;
+import org.netbeans.modules.ripgrep.matcher.RipGrepReplacement;
 import org.openide.filesystems.FileChangeAdapter;
 import org.openide.filesystems.FileEvent;
 import org.openide.filesystems.FileLock;
@@ -98,7 +106,13 @@ public final class MatchingObject implements Comparable<MatchingObject>,
     /** */
     private Node nodeDelegate = null;
     /** */
-    List<TextDetail> textDetails;
+    private List<TextDetail> textDetails;
+    /** Matches not yet turned into {@link #textDetails}. */
+    private MatchStore matches;
+    /** offsets of the matching lines, kept when the matches are gone */
+    private LineIndex lineIndex;
+    /** replacements computed by rg, set to the details when they are created */
+    private List<RipGrepReplacement> replacements;
     
     /**
      * charset used for full-text search of the object.
@@ -132,7 +146,9 @@ public final class MatchingObject implements Comparable<MatchingObject>,
     /** */
     private InvalidityStatus invalidityStatus = null;
     /** */
-    private StringBuilder text;
+    private CharSequence text;
+    /** decoder of the file content, reused by every read */
+    private CharsetDecoder decoder;
     private final PropertyChangeSupport changeSupport =
             new PropertyChangeSupport(this);
     private FileListener fileListener;
@@ -152,6 +168,21 @@ public final class MatchingObject implements Comparable<MatchingObject>,
      */
     MatchingObject(ResultModel resultModel, FileObject fileObject,
             Charset charset, List<TextDetail> textDetails) {
+        this(resultModel, fileObject, charset, textDetails, null);
+    }
+
+    /**
+     * Creates a new {@code MatchingObject} whose text details are created
+     * from the match store when they are first needed.
+     */
+    MatchingObject(ResultModel resultModel, FileObject fileObject,
+            Charset charset, MatchStore matches) {
+        this(resultModel, fileObject, charset, null, matches);
+    }
+
+    private MatchingObject(ResultModel resultModel, FileObject fileObject,
+            Charset charset, List<TextDetail> textDetails,
+            MatchStore matches) {
 
         if (resultModel == null) {
             throw new IllegalArgumentException("resultModel = null");   //NOI18N
@@ -161,6 +192,8 @@ public final class MatchingObject implements Comparable<MatchingObject>,
         }
 
         this.textDetails = textDetails;
+        this.matches = matches;
+        this.lineIndex = matches == null ? null : matches.getLineIndex();
         this.resultModel = resultModel;
         this.charset = charset;
         this.fileObject = fileObject;
@@ -174,20 +207,20 @@ public final class MatchingObject implements Comparable<MatchingObject>,
             nodeDelegate = dataObject.getNodeDelegate();
         }
         setUpDataObjValidityChecking();
+        selectedMatchesCount = getDetailsCount();
         if (textDetails != null && !textDetails.isEmpty()) {
             adjustTextDetails();
         }
     }
 
     /**
-     * Set line number indent for text details.
+     * Set line number indent for text details and listen on their selection.
      */
     private void adjustTextDetails() {
         TextDetail lastDetail = textDetails.get(textDetails.size() - 1);
         int maxLine = lastDetail.getLine();
         int maxDigits = countDigits(maxLine);
         for (TextDetail td : textDetails) {
-            selectedMatchesCount += 1;
             int digits = countDigits(td.getLine());
             if (digits < maxDigits) {
                 td.setLineNumberIndent(indent(maxDigits - digits));
@@ -302,13 +335,14 @@ public final class MatchingObject implements Comparable<MatchingObject>,
         matchSelectionListener.setEnabled(false);
         int origMatchesSelected = selectedMatchesCount;
         try {
-            if (textDetails != null) {
-                for (TextDetail td : getTextDetails()) {
+            List<TextDetail> details = getTextDetails();
+            if (details != null) {
+                for (TextDetail td : details) {
                     td.setSelectedRecursively(selected);
                 }
             }
             setSelected(selected);
-            selectedMatchesCount = selected ? getTextDetails().size() : 0;
+            selectedMatchesCount = selected ? getDetailsCount() : 0;
             changeSupport.firePropertyChange(PROP_MATCHES_SELECTED,
                     origMatchesSelected,
                     selectedMatchesCount);
@@ -373,22 +407,78 @@ public final class MatchingObject implements Comparable<MatchingObject>,
     /**
      */
     String getText() throws IOException {
-         StringBuilder txt = text(false);
+         CharSequence txt = TextCache.getDefault().getText(getFileObject(),
+                 this::readText);
          return (txt != null)?  txt.toString() : null;
     }
 
-    public List<TextDetail> getTextDetails() {
+    /**
+     * Text details of this object. They are created from the match store on
+     * the first call, all of them are selected then.
+     */
+    public synchronized List<TextDetail> getTextDetails() {
+        if (textDetails == null && matches != null) {
+            textDetails = matches.createDetails();
+            matches = null;
+            if (replacements != null) {
+                applyReplacements(replacements);
+                replacements = null;
+            }
+            if (!textDetails.isEmpty()) {
+                adjustTextDetails();
+            }
+        }
         return textDetails;
     }
 
-    public int getDetailsCount() {
+    /**
+     * Sets replacements of the matches computed by rg for the preview, in
+     * the order of the text details. They are not set from the first one
+     * that does not start on the line of its detail.
+     */
+    synchronized void setReplacements(List<RipGrepReplacement> replacements) {
         if (textDetails == null) {
-            return 0;
+            this.replacements = replacements;
         } else {
+            applyReplacements(replacements);
+        }
+    }
+
+    private void applyReplacements(List<RipGrepReplacement> replacements) {
+        int count = Math.min(textDetails.size(), replacements.size());
+        for (int i = 0; i < count; i++) {
+            TextDetail td = textDetails.get(i);
+            RipGrepReplacement r = replacements.get(i);
+            if (td.getLine() != r.getLine()) {
+                break;
+            }
+            td.setReplacement(r.getText());
+        }
+    }
+
+    /**
+     * Tells whether this object was found with text details, even if there
+     * are none or they have not been created yet.
+     */
+    synchronized boolean hasTextDetails() {
+        return textDetails != null || matches != null;
+    }
+
+    public synchronized int getDetailsCount() {
+        if (textDetails != null) {
             return textDetails.size();
+        } else {
+            return matches == null ? 0 : matches.size();
         }
     }
 
+    /**
+     * Number of selected text details.
+     */
+    int getSelectedMatchesCount() {
+        return selectedMatchesCount;
+    }
+
     /**
      * @return {@codeDetailNode}s representing the matches, or
      * <code>null</code> if no matching string is known for this matching
@@ -397,6 +487,7 @@ public final class MatchingObject implements Comparable<MatchingObject>,
      */
     public Node[] getDetails() {
 
+        List<TextDetail> textDetails = getTextDetails();
         if (textDetails == null) {
             return null;
         }
@@ -420,36 +511,135 @@ public final class MatchingObject implements Comparable<MatchingObject>,
     }
 
     /**
-     * Reads the file if it has not been read already.
+     * Reads the file if it has not been read already, or takes its text from
+     * the {@link TextCache}. Files on the local disk are read at once and
+     * decoded straight into the returned text, which must not be modified.
+     *
+     * @param refreshCache whether to read the file even if its text is
+     * cached; the timestamp of a cached text may miss recent changes
      * 
      * @author  TimBoudreau
      * @author  Marian Petras
      */
-    StringBuilder text(boolean refreshCache) throws IOException {
+    CharSequence text(boolean refreshCache) throws IOException {
         assert !EventQueue.isDispatchThread();
 
-        if (refreshCache || (text == null)) {     
-            if (charset == null) {
-                text = new StringBuilder(getFileObject().asText());
-            } else {
-                text = new StringBuilder();
-                CharsetDecoder decoder = charset.newDecoder();
-                try (InputStream istm = getFileObject().getInputStream();
-                        InputStreamReader isr = new InputStreamReader(istm,
-                                decoder);
-                        BufferedReader br = new BufferedReader(isr,
-                                FILE_READ_BUFFER_SIZE)) {
-                    int read;
-                    char[] chars = new char[FILE_READ_BUFFER_SIZE];
-                    while ((read = br.read(chars)) != -1) {
-                        text.append(chars, 0, read);
-                    }
-                }
-            }
+        if (refreshCache) {
+            text = readText();
+            TextCache.getDefault().putText(getFileObject(), text);
+        } else if (text == null) {
+            text = TextCache.getDefault().getText(getFileObject(),
+                    this::readText);
         }      
         return text;
     }
 
+    /**
+     * Reads the file, bypassing the {@link TextCache}.
+     */
+    private CharSequence readText() throws IOException {
+        if (charset == null) {
+            return getFileObject().asText();
+        }
+        CharsetDecoder dec = getDecoder();
+        synchronized (dec) {
+            File file = FileUtil.toFile(getFileObject());
+            return (file != null && file.length() <= Integer.MAX_VALUE)
+                    ? readFile(file, dec)
+                    : readStream(dec);
+        }
+    }
+
+    /**
+     * Reads the lines around the detail, or the first lines of the file if
+     * the detail is {@code null}, without reading the whole file.
+     *
+     * @return the lines, or {@code null} if the file is not on the local disk
+     * or its charset is not supported by {@link TextWindow}
+     */
+    TextWindow getTextWindow(TextDetail location) throws IOException {
+        assert !EventQueue.isDispatchThread();
+
+        File file = FileUtil.toFile(getFileObject());
+        Charset cs = charset != null ? charset
+                : FileEncodingQuery.getEncoding(getFileObject());
+        if (file == null || !TextWindow.isSupported(cs)) {
+            return null;
+        }
+        int line = location == null ? 1 : location.getLine();
+        long lineStart = getLineOffset(line);
+        if (lineStart < 0) {
+            // rg offsets and columns count bytes
+            lineStart = location.getStartOffset() - (location.getColumn() - 1);
+        }
+        long start = lineStart;
+        return TextCache.getDefault().getWindow(getFileObject(), start,
+                () -> TextWindow.read(file, cs, start, line));
+    }
+
+    /**
+     * Offset of the first byte of a matching line, as reported by rg.
+     *
+     * @return the offset, -1 if it is not known
+     */
+    long getLineOffset(int line) {
+        LineIndex index = lineIndex;
+        return index == null ? (line == 1 ? 0 : -1) : index.getOffset(line);
+    }
+
+    /**
+     * Decoder of the file, created by the matcher of the search so that it
+     * reports decoding errors when replacing.
+     */
+    private synchronized CharsetDecoder getDecoder() {
+        if (decoder == null) {
+            BasicComposition composition = resultModel == null
+                    ? null : resultModel.basicComposition;
+            decoder = composition == null
+                    ? charset.newDecoder()
+                    : composition.getMatcher().prepareDecoder(charset);
+        }
+        return decoder;
+    }
+
+    /**
+     * Reads the whole file into one buffer and decodes it. The file is not
+     * memory-mapped, a mapping is released only by the garbage collector and
+     * prevents writing the replaced text on Windows.
+     */
+    private static CharBuffer readFile(File file, CharsetDecoder decoder)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // read until the end of the file or the buffer
+            }
+            bytes.flip();
+            return decoder.decode(bytes);
+        }
+    }
+
+    /**
+     * Reads files that are not on the local disk.
+     */
+    private StringBuilder readStream(CharsetDecoder decoder) throws IOException {
+        decoder.reset();
+        StringBuilder sb = new StringBuilder();
+        try (InputStream istm = getFileObject().getInputStream();
+                InputStreamReader isr = new InputStreamReader(istm,
+                        decoder);
+                BufferedReader br = new BufferedReader(isr,
+                        FILE_READ_BUFFER_SIZE)) {
+            int read;
+            char[] chars = new char[FILE_READ_BUFFER_SIZE];
+            while ((read = br.read(chars)) != -1) {
+                sb.append(chars, 0, read);
+            }
+        }
+        return sb;
+    }
+
     @Override
     public int compareTo(MatchingObject o) {
             if(o == null) {
@@ -551,8 +741,15 @@ public final class MatchingObject implements Comparable<MatchingObject>,
     /**
      */
     InvalidityStatus checkValidity() {
+        return updateValidity(getFreshInvalidityStatus());
+    }
+
+    /**
+     * Marks this object invalid if the status computed by
+     * {@link #getFreshInvalidityStatus()} is not {@code null}.
+     */
+    InvalidityStatus updateValidity(InvalidityStatus status) {
         InvalidityStatus oldStatus = invalidityStatus;
-        InvalidityStatus status = getFreshInvalidityStatus();
         if (status != null) {
             valid = false;
             invalidityStatus = status;
@@ -590,7 +787,7 @@ public final class MatchingObject implements Comparable<MatchingObject>,
      * @author  Tim Boudreau
      * @author  Marian Petras
      */
-    private InvalidityStatus getFreshInvalidityStatus() {
+    InvalidityStatus getFreshInvalidityStatus() {
         log(FINER, "getInvalidityStatus()");                            //NOI18N
         FileObject f = getFileObject();
         if (!f.isValid()) {
@@ -654,8 +851,15 @@ public final class MatchingObject implements Comparable<MatchingObject>,
                 this.dataObject = updatedDataObject;
                 this.nodeDelegate = updatedDataObject.getNodeDelegate();
                 this.valid = true;
-                for (TextDetail td : textDetails) {
-                    td.updateDataObject(updatedDataObject);
+                synchronized (this) {
+                    if (matches != null) {
+                        matches.setDataObject(updatedDataObject);
+                    }
+                    if (textDetails != null) {
+                        for (TextDetail td : textDetails) {
+                            td.updateDataObject(updatedDataObject);
+                        }
+                    }
                 }
             }
         } else {
@@ -670,7 +874,7 @@ public final class MatchingObject implements Comparable<MatchingObject>,
         assert !EventQueue.isDispatchThread();
         assert isSelected();
         
-        StringBuilder content = text(true);  //refresh the cache, reads the file
+        CharSequence content = text(true);  //refresh the cache, reads the file
         List<TextDetail> textMatches = getTextDetails();
         int toReplace = 0;
         for (TextDetail td : textMatches) {
@@ -680,13 +884,25 @@ public final class MatchingObject implements Comparable<MatchingObject>,
             return null;
         }
 
-        int offsetShift = 0;
-        for (int i=0; i < textMatches.size(); i++) {
-            TextDetail textDetail = textMatches.get(i);
-            if (!textDetail.isSelected()){
+        BasicSearchCriteria criteria = resultModel.basicCriteria;
+        boolean regexp = criteria.getSearchPattern().isRegExp();
+        ReplacementTemplate template = regexp
+                ? criteria.getReplaceTemplate() : null;
+        Matcher m = regexp ? criteria.getTextPattern().matcher("") : null; //NOI18N
+        String replaceExpr = criteria.getReplaceExpr();
+
+        // unchanged parts and replacements are appended in one pass
+        StringBuilder replaced = new StringBuilder(content.length()
+                + toReplace * Math.max(0, replaceExpr.length() - 1));
+        int copied = 0;
+        for (TextDetail textDetail : textMatches) {
+            if (!textDetail.isSelected()
+                    || textDetail.getStartOffset() < copied) { // overlapping
                 continue;
             }
-            String matchedSubstring = content.substring(textDetail.getStartOffset() + offsetShift, textDetail.getEndOffset() + offsetShift);
+            String matchedSubstring = content.subSequence(
+                    textDetail.getStartOffset(),
+                    textDetail.getEndOffset()).toString();
             if (!matchedSubstring.equals(textDetail.getMatchedText())) {
                 log(SEVERE, "file match part differs from the expected match");  //NOI18N
                 if (LOG.isLoggable(FINEST)) {
@@ -700,17 +916,27 @@ public final class MatchingObject implements Comparable<MatchingObject>,
                 return InvalidityStatus.CHANGED;
             }
 
-            String replacedString = resultModel.basicCriteria.getReplaceExpr();
-            if (resultModel.basicCriteria.getSearchPattern().isRegExp()){
-                Matcher m = resultModel.basicCriteria.getTextPattern().matcher(matchedSubstring);
-                replacedString = m.replaceFirst(resultModel.basicCriteria.getReplaceString());
-            } else if (resultModel.basicCriteria.isPreserveCase()) {
-                replacedString = adaptCase(replacedString, matchedSubstring);
+            replaced.append(content, copied, textDetail.getStartOffset());
+            if (regexp) {
+                // the pattern is matched against the matched text only
+                m.reset(matchedSubstring);
+                if (m.find()) {
+                    replaced.append(matchedSubstring, 0, m.start());
+                    template.appendTo(replaced, m);
+                    replaced.append(matchedSubstring, m.end(),
+                            matchedSubstring.length());
+                } else {
+                    replaced.append(matchedSubstring);
+                }
+            } else if (criteria.isPreserveCase()) {
+                replaced.append(adaptCase(replaceExpr, matchedSubstring));
+            } else {
+                replaced.append(replaceExpr);
             }
-            
-            content.replace(textDetail.getStartOffset() + offsetShift, textDetail.getEndOffset() + offsetShift, replacedString);
-            offsetShift += replacedString.length() - matchedSubstring.length();
+            copied = textDetail.getEndOffset();
         }
+        replaced.append(content, copied, content.length());
+        text = replaced;
         return null;
     }
     
@@ -761,6 +987,7 @@ public final class MatchingObject implements Comparable<MatchingObject>,
                         charset)) {
                 writer.write(makeStringToWrite());
             }
+            text = null; // written, do not keep the whole file
         } else {
             System.err.println("Would write to " + getFileObject().getPath());//NOI18N
             System.err.println(text);
@@ -775,7 +1002,7 @@ public final class MatchingObject implements Comparable<MatchingObject>,
     
     /**
      */
-    static String makeStringToWrite(StringBuilder text) {
+    static String makeStringToWrite(CharSequence text) {
         return text.toString();
     }
 
@@ -850,7 +1077,7 @@ public final class MatchingObject implements Comparable<MatchingObject>,
      * Remove text detail, update precomputed values, inform listeners.
      */
     public void removeDetail(TextDetail textDetail) {
-        boolean removed = textDetails.remove(textDetail);
+        boolean removed = getTextDetails().remove(textDetail);
         if (removed) {
             matchesCount = getDetailsCount();
             resultModel.removeDetailMatch(this, textDetail);
@@ -873,7 +1100,16 @@ public final class MatchingObject implements Comparable<MatchingObject>,
         this.charset = def.getCharset();
         FileObject origFileObject = fileObject;
         this.fileObject = def.getFileObject();
-        this.textDetails = def.getTextDetails();
+        synchronized (this) {
+            this.matches = def.getMatches();
+            this.textDetails = matches == null ? def.getTextDetails() : null;
+            this.lineIndex = matches == null ? null : matches.getLineIndex();
+            this.replacements = null;
+            matchesCount = getDetailsCount();
+        }
+        if (fileObject != origFileObject) {
+            resultModel.fileObjectChanged(this);
+        }
 
         dataObject = dataObject();
         timestamp = fileObject.lastModified().getTime();
@@ -892,9 +1128,11 @@ public final class MatchingObject implements Comparable<MatchingObject>,
 
         Mutex.EVENT.writeAccess(() -> {
             int origSelectedMatches = selectedMatchesCount;
-            selectedMatchesCount = 0;
-            if (textDetails != null && !textDetails.isEmpty()) {
-                adjustTextDetails();
+            synchronized (MatchingObject.this) {
+                selectedMatchesCount = getDetailsCount();
+                if (textDetails != null && !textDetails.isEmpty()) {
+                    adjustTextDetails();
+                }
             }
             
             changeSupport.firePropertyChange(PROP_MATCHES_SELECTED,
@@ -922,6 +1160,7 @@ public final class MatchingObject implements Comparable<MatchingObject>,
         private FileObject fileObject;
         private Charset charset;
         private List<TextDetail> textDetails;
+        private MatchStore matches;
 
         public Def(FileObject fileObject, Charset charset, List<TextDetail> textDetails) {
             this.fileObject = fileObject;
@@ -929,6 +1168,16 @@ public final class MatchingObject implements Comparable<MatchingObject>,
             this.textDetails = textDetails;
         }
 
+        /**
+         * Creates a definition whose text details are kept in a compact form
+         * until they are needed.
+         */
+        public Def(FileObject fileObject, Charset charset, MatchStore matches) {
+            this.fileObject = fileObject;
+            this.charset = charset;
+            this.matches = matches;
+        }
+
         public Charset getCharset() {
             return charset;
         }
@@ -945,27 +1194,68 @@ public final class MatchingObject implements Comparable<MatchingObject>,
             this.fileObject = fileObject;
         }
 
+        /**
+         * Text details of the definition. If they are kept in a
+         * {@link MatchStore}, new details are created by every call.
+         */
         public List<TextDetail> getTextDetails() {
+            if (textDetails == null && matches != null) {
+                return matches.createDetails();
+            }
             return textDetails;
         }
 
         public void setTextDetails(List<TextDetail> textDetails) {
             this.textDetails = textDetails;
+            this.matches = null;
+        }
+
+        /**
+         * Compact store of the matches, or {@code null} if the text details
+         * were passed as a list.
+         */
+        public MatchStore getMatches() {
+            return matches;
+        }
+
+        public int getDetailsCount() {
+            if (textDetails != null) {
+                return textDetails.size();
+            } else {
+                return matches == null ? 0 : matches.size();
+            }
         }
     }
 
+    /**
+     * Lazy children, nodes are only created for the rows the outline shows.
+     */
     private class DetailsChildren extends Children.Keys<TextDetail> {
 
         private final boolean replacing;
 
         public DetailsChildren(boolean replacing, ResultModel model) {
+            super(true);
             this.replacing = replacing;
-            setKeys(getTextDetails());
 
             MatchingObject.this.addPropertyChangeListener(PROP_CHILD_REMOVED,
                     (PropertyChangeEvent evt) -> update());
         }
 
+        /**
+         * Text details are created when the node is expanded for the first
+         * time, not when it is added to the results.
+         */
+        @Override
+        protected void addNotify() {
+            setKeys(getTextDetails());
+        }
+
+        @Override
+        protected void removeNotify() {
+            setKeys(Collections.<TextDetail>emptyList());
+        }
+
         @Override
         protected Node[] createNodes(TextDetail key) {
             return new Node[]{new TextDetail.DetailNode(key, replacing,
@@ -981,11 +1271,13 @@ public final class MatchingObject implements Comparable<MatchingObject>,
 
         @Override
         public void fileDeleted(FileEvent fe) {
+            TextCache.getDefault().invalidate(fe.getFile());
             setInvalid(InvalidityStatus.DELETED);
         }
 
         @Override
         public void fileChanged(FileEvent fe) {
+            TextCache.getDefault().invalidate(fe.getFile());
             if (resultModel.basicCriteria.isSearchAndReplace()) {
                 setInvalid(InvalidityStatus.CHANGED);
             }
@@ -22,6 +22,7 @@ package org.netbeans.modules.ripgrep;
 import java.awt.EventQueue;
 import java.lang.ref.Reference;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.List;
 import org.openide.ErrorManager;
 import org.openide.nodes.Node;
@@ -61,41 +62,34 @@ public final class PrintDetailsTask implements Runnable {
         displayer = new SearchDisplayer();
         callDisplayerFromAWT("prepareOutput");                    //NOI18N
         
-        int freeBufSpace = 0;
         for (MatchingObject obj : objects) {
 
             /* Collect details about the found node: */
-            Node[] allDetails = null;
-            if (basicSearchCriteria != null) {
-                Node[] details = obj.getDetails();
-                if (details != null && details.length != 0) {
-                    allDetails = details;
-                }
-            }
-            if (allDetails == null) {
+            List<TextDetail> details = basicSearchCriteria != null
+                    ? obj.getTextDetails() : null;
+            if (details == null || details.isEmpty()) {
                 continue;
             }
 
-            /* Print the collected details: */
-            freeBufSpace = addToBuffer(allDetails, 0);
-            while (freeBufSpace < 0) {
-                printBuffer();
-
-                int remainderIndex = allDetails.length + freeBufSpace;
-                freeBufSpace = addToBuffer(allDetails, remainderIndex);
-            }
-            if (freeBufSpace == 0) {
-                printBuffer();
+            /* Print the details, creating nodes only for the buffer: */
+            for (TextDetail detail : details.toArray(new TextDetail[0])) {
+                buffer[bufPos++] = new TextDetail.DetailNode(detail, false,
+                        obj);
+                if (bufPos == BUFFER_SIZE) {
+                    printBuffer();
+                }
+                if (interrupted) {
+                    break;
+                }
             }
             
             if (interrupted) {
                 break;
             }
         }
-        if ((freeBufSpace != 0) && !interrupted) {
-            int smallBufSize = BUFFER_SIZE - freeBufSpace;
-            Node[] smallBuffer = new Node[smallBufSize];
-            System.arraycopy(buffer, 0, smallBuffer, 0, smallBufSize);
+        if ((bufPos != 0) && !interrupted) {
+            Node[] smallBuffer = new Node[bufPos];
+            System.arraycopy(buffer, 0, smallBuffer, 0, bufPos);
             displayer.displayNodes(smallBuffer);
         }
         
@@ -121,38 +115,12 @@ public final class PrintDetailsTask implements Runnable {
         return displayer.getOutputWriterRef();
     }
 
-    /**
-     * Adds some or all of the given nodes to the buffer.
-     * Nodes at position lesser than the given start index are ignored.
-     * If the nodes to be added do not fit all into the buffer, the remaining
-     * nodes are ignored.
-     *
-     * @param  detailNodes  array containing nodes to be added
-     * @param  firstIndex  index of the first node to be added to the buffer
-     * @return  positive number expressing number of free items in the buffer;
-     *          negative number expressing number of remaining nodes that
-     *                  did not fit into the buffer;
-     *          or <code>0</code> if the nodes exactly filled the buffer
-     */
-    private int addToBuffer(Node[] detailNodes, int firstIndex) {
-        assert firstIndex >=0 && firstIndex <= detailNodes.length;
-
-        int nodesToAddCount = detailNodes.length - firstIndex;
-        int newBufPos = bufPos + nodesToAddCount;
-        int remainingSpace = BUFFER_SIZE - newBufPos;
-        if (remainingSpace <= 0) {
-            nodesToAddCount += remainingSpace;
-            newBufPos = 0;
-        }
-        System.arraycopy(detailNodes, firstIndex, buffer, bufPos, nodesToAddCount);
-        bufPos = newBufPos;
-        return remainingSpace;
-    }
-
     /**
      */
     private void printBuffer() {
         displayer.displayNodes(buffer);
+        Arrays.fill(buffer, null);
+        bufPos = 0;
     }
 
     /**
@@ -21,8 +21,17 @@ package org.netbeans.modules.ripgrep;
 
 import java.awt.EventQueue;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import org.netbeans.api.progress.ProgressHandle;
 import org.netbeans.modules.ripgrep.MatchingObject.InvalidityStatus;
 import org.netbeans.modules.ripgrep.ui.BasicReplaceResultsPanel;
@@ -30,6 +39,7 @@ import org.openide.filesystems.FileAlreadyLockedException;
 import org.openide.filesystems.FileLock;
 import org.openide.filesystems.FileUtil;
 import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
 import org.openide.util.UserQuestionException;
 
 /**
@@ -47,6 +57,17 @@ public final class ReplaceTask implements Runnable {
      * and displayed to the user
      */
     private static final int MAX_ERRORS_CHECKED = 20;
+    /**
+     * workers checking files and computing their new content
+     */
+    private static final int WORKERS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    /**
+     * maximum number of files processed ahead of the thread writing them
+     */
+    private static final int WINDOW = 4 * WORKERS;
+    private static final RequestProcessor RP = new RequestProcessor(
+            ReplaceTask.class.getName(), WORKERS);
     
     private final List<MatchingObject> matchingObjects;
     private final ProgressHandle progressHandle;
@@ -106,17 +127,22 @@ public final class ReplaceTask implements Runnable {
     private void checkForErrors() {
         assert !EventQueue.isDispatchThread();
         
-        int errorsCount = 0;
+        int[] errorsCount = {0};
+        Map<MatchingObject, InvalidityStatus> invalid = new LinkedHashMap<>();
         
-        for(MatchingObject mo: matchingObjects) {
-            InvalidityStatus status = mo.checkValidity();
+        // the workers only compute the statuses, the objects fire their
+        // changes from this thread
+        runOrdered(matchingObjects, MatchingObject::getFreshInvalidityStatus,
+                (InvalidityStatus status) -> { },
+                (MatchingObject mo, InvalidityStatus status) -> {
             if (status != null) {
+                invalid.put(mo, status);
                 problems.add(status.getDescription(mo.getFileObject().getPath()));
-                if (++errorsCount > MAX_ERRORS_CHECKED) {
-                    break;
-                }
+                return ++errorsCount[0] <= MAX_ERRORS_CHECKED;
             }
-        }
+            return true;
+        });
+        invalid.forEach(MatchingObject::updateValidity);
         if (!problems.isEmpty()) {
             resultStatus = ResultStatus.PRE_CHECK_FAILED;
         }
@@ -124,58 +150,164 @@ public final class ReplaceTask implements Runnable {
 
     /**
      * Fill internal list of strings describing problems that happened during
-     * the replace and set resultStatus variable
+     * the replace and set resultStatus variable. Files are locked and their
+     * new text is computed by the workers, they are written one by one by the
+     * calling thread, in the order of the matching objects.
      */
     private void doReplace() {
         assert !EventQueue.isDispatchThread();
 
-        int i = 0;
+        int[] i = {0};
         int moSize = matchingObjects.size();
-        for(final MatchingObject obj: matchingObjects) {
-            int workunit = moSize + i++;
+        runOrdered(matchingObjects, ReplaceTask::prepare,
+                Prepared::release,
+                (MatchingObject obj, Prepared prepared) -> {
+            int workunit = moSize + i[0]++;
             progressHandle.progress(obj.getName(), workunit);
-            if (!obj.isSelected() || !obj.isValid()) {
-                continue;
+            if (prepared == null) {
+                return true;
             }
-            
-            String invDescription = obj.getInvalidityDescription();
-            if (invDescription != null) {
-                problems.add(invDescription);
-                continue;
-            }
-            
-            String errMessage = null;
-            FileLock fileLock = null;
-            try {
-                fileLock = obj.lock();
-                MatchingObject.InvalidityStatus status = obj.replace();
-                if (status == null) {
-                    obj.write(fileLock);
-                } else {
-                    errMessage = status.getDescription(obj.getFileObject().getPath());
-                }
-            } catch (FileAlreadyLockedException |
-                    UserQuestionException ex) {
-                errMessage = createMsgFileLocked(obj);
-            } catch (IOException ex) {
-                ex.printStackTrace();      //PENDING - ex.printStackTrace()?
-                errMessage = ex.getLocalizedMessage();
-                if (errMessage == null) {
-                    errMessage = ex.getMessage();
-                }
-            } finally {
-                if (fileLock != null) {
-                    fileLock.releaseLock();
+            String errMessage = prepared.problem;
+            if (errMessage == null) {
+                try {
+                    obj.write(prepared.lock);
+                } catch (IOException ex) {
+                    ex.printStackTrace();      //PENDING - ex.printStackTrace()?
+                    errMessage = getMessage(ex);
                 }
             }
+            prepared.release();
             if (errMessage != null) {
                 problems.add(errMessage);
             }
-        }
+            return true;
+        });
         resultStatus = problems.isEmpty() ? ResultStatus.SUCCESS
                                           : ResultStatus.PROBLEMS_ENCOUNTERED;
     }
 
+    /**
+     * Locks the file and replaces the matches in the text of the object.
+     * Called by the workers.
+     *
+     * @return the locked file, or the problem that prevents writing it,
+     * {@code null} if the object is not replaced
+     */
+    private static Prepared prepare(MatchingObject obj) {
+        if (!obj.isSelected() || !obj.isValid()) {
+            return null;
+        }
+        
+        String invDescription = obj.getInvalidityDescription();
+        if (invDescription != null) {
+            return new Prepared(null, invDescription);
+        }
+        
+        String errMessage = null;
+        FileLock fileLock = null;
+        try {
+            fileLock = obj.lock();
+            MatchingObject.InvalidityStatus status = obj.replace();
+            if (status == null) {
+                return new Prepared(fileLock, null);
+            } else {
+                errMessage = status.getDescription(obj.getFileObject().getPath());
+            }
+        } catch (FileAlreadyLockedException |
+                UserQuestionException ex) {
+            errMessage = createMsgFileLocked(obj);
+        } catch (IOException ex) {
+            ex.printStackTrace();      //PENDING - ex.printStackTrace()?
+            errMessage = getMessage(ex);
+        }
+        if (fileLock != null) {
+            fileLock.releaseLock();
+        }
+        return new Prepared(null, errMessage);
+    }
+
+    private static String getMessage(IOException ex) {
+        String errMessage = ex.getLocalizedMessage();
+        if (errMessage == null) {
+            errMessage = ex.getMessage();
+        }
+        return errMessage;
+    }
+
+    /**
+     * Runs the work for every object on the worker pool and passes the
+     * results to the consumer in the order of the objects, in the calling
+     * thread. At most {@link #WINDOW} objects are processed ahead of the
+     * consumer, so that only a few replaced texts are kept in memory.
+     *
+     * @param discard cleans up results that are not passed to the consumer
+     * @param consumer returns {@code false} to skip the remaining objects
+     */
+    private static <R> void runOrdered(List<MatchingObject> objects,
+            Function<MatchingObject, R> work, Consumer<R> discard,
+            BiPredicate<MatchingObject, R> consumer) {
+        Deque<Future<R>> running = new ArrayDeque<>(WINDOW);
+        int next = 0;
+        try {
+            for (int i = 0; i < objects.size(); i++) {
+                while (next < objects.size() && next < i + WINDOW) {
+                    MatchingObject mo = objects.get(next++);
+                    running.add(RP.submit(() -> work.apply(mo)));
+                }
+                R result;
+                try {
+                    result = running.remove().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw cause instanceof RuntimeException
+                            ? (RuntimeException) cause
+                            : new IllegalStateException(cause);
+                }
+                if (!consumer.test(objects.get(i), result)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<R> f : running) {
+                if (!f.cancel(false)) {
+                    try {
+                        R result = f.get();
+                        if (result != null) {
+                            discard.accept(result);
+                        }
+                    } catch (InterruptedException | ExecutionException ex) {
+                        // not prepared
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Result of {@link #prepare(MatchingObject)}.
+     */
+    private static final class Prepared {
+
+        final FileLock lock;
+        final String problem;
+
+        Prepared(FileLock lock, String problem) {
+            this.lock = lock;
+            this.problem = problem;
+        }
+
+        void release() {
+            if (lock != null) {
+                lock.releaseLock();
+            }
+        }
+    }
+
     private static String createMsgFileLocked(MatchingObject matchingObj) {
         return NbBundle.getMessage(
                 ReplaceTask.class,
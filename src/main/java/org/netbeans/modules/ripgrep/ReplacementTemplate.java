@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replacement string of a regular expression search, parsed once into
+ * literal parts and group references.
+ *
+ * <p>The syntax is the one of {@link Matcher#appendReplacement}: {@code $n}
+ * and <code>${name}</code> refer to groups, a backslash quotes the next
+ * character.</p>
+ */
+final class ReplacementTemplate {
+
+    /** Literal Strings, group numbers and {@link Named} group references. */
+    private final List<Object> parts;
+    private final String replacement;
+    private final String regex;
+    private final int flags;
+
+    private ReplacementTemplate(List<Object> parts, String replacement,
+            Pattern pattern) {
+        this.parts = parts;
+        this.replacement = replacement;
+        this.regex = pattern.pattern();
+        this.flags = pattern.flags();
+    }
+
+    /**
+     * Tells whether this template was parsed from the replacement for the
+     * pattern.
+     */
+    boolean isFor(String replacement, Pattern pattern) {
+        return this.replacement.equals(replacement)
+                && regex.equals(pattern.pattern()) && flags == pattern.flags();
+    }
+
+    /**
+     * Parses the replacement for the groups of the pattern.
+     *
+     * @throws IllegalArgumentException If the replacement refers to a group
+     * that does not exist or ends with a single backslash or dollar sign.
+     */
+    static ReplacementTemplate parse(String replacement, Pattern pattern) {
+        int groupCount = pattern.matcher("").groupCount();             //NOI18N
+        List<Object> parts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException(
+                            "character to be escaped is missing");      //NOI18N
+                }
+                literal.append(replacement.charAt(i++));
+            } else if (c == '$') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException(
+                            "Illegal group reference: group index is missing"); //NOI18N
+                }
+                addLiteral(parts, literal);
+                if (replacement.charAt(i) == '{') {
+                    int end = replacement.indexOf('}', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException(
+                                "named capturing group is missing trailing '}'"); //NOI18N
+                    }
+                    parts.add(new Named(replacement.substring(i + 1, end)));
+                    i = end + 1;
+                } else {
+                    int group = replacement.charAt(i++) - '0';
+                    if (group < 0 || group > 9) {
+                        throw new IllegalArgumentException(
+                                "Illegal group reference");             //NOI18N
+                    }
+                    // take as many digits as form an existing group
+                    while (i < replacement.length()) {
+                        int digit = replacement.charAt(i) - '0';
+                        if (digit < 0 || digit > 9
+                                || group * 10 + digit > groupCount) {
+                            break;
+                        }
+                        group = group * 10 + digit;
+                        i++;
+                    }
+                    if (group > groupCount) {
+                        throw new IllegalArgumentException(
+                                "No group " + group);                   //NOI18N
+                    }
+                    parts.add(group);
+                }
+            } else {
+                literal.append(c);
+            }
+        }
+        addLiteral(parts, literal);
+        return new ReplacementTemplate(parts, replacement, pattern);
+    }
+
+    private static void addLiteral(List<Object> parts, StringBuilder literal) {
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Appends the replacement of the last match of the matcher.
+     */
+    void appendTo(StringBuilder out, Matcher matcher) {
+        for (Object part : parts) {
+            String text;
+            if (part instanceof Integer) {
+                text = matcher.group((Integer) part);
+            } else if (part instanceof Named) {
+                text = matcher.group(((Named) part).name);
+            } else {
+                text = (String) part;
+            }
+            if (text != null) {
+                out.append(text);
+            }
+        }
+    }
+
+    /**
+     * The replacement in the syntax of {@code rg --replace}.
+     */
+    String toRipGrep() {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof Integer) {
+                sb.append("${").append(part).append('}');              //NOI18N
+            } else if (part instanceof Named) {
+                sb.append("${").append(((Named) part).name).append('}'); //NOI18N
+            } else {
+                sb.append(((String) part).replace("$", "$$"));         //NOI18N
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reference to a named group.
+     */
+    private static final class Named {
+
+        final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Collects found objects and passes them to the {@link ResultDisplayer} in
+ * batches, so that the result model and the results panel are updated once
+ * per batch instead of once per file.
+ *
+ * <p>A batch is delivered when it is full, or when its oldest object has
+ * waited for {@link #BATCH_DELAY_MS}, whichever comes first.</p>
+ */
+final class ResultBatcher {
+
+    /** Maximum number of objects in a batch. */
+    static final int BATCH_SIZE = 64;
+    /** Maximum time an object can wait for its batch to be delivered. */
+    static final int BATCH_DELAY_MS = 50;
+
+    private static final RequestProcessor RP = new RequestProcessor(
+            ResultBatcher.class);
+
+    private final ResultDisplayer displayer;
+    private final RequestProcessor.Task flushTask;
+    private List<MatchingObject.Def> pending = new ArrayList<>(BATCH_SIZE);
+
+    ResultBatcher(ResultDisplayer displayer) {
+        this.displayer = displayer;
+        this.flushTask = RP.create(this::flush);
+    }
+
+    /**
+     * Add a found object. It is delivered with the current batch.
+     */
+    synchronized void add(MatchingObject.Def def) {
+        pending.add(def);
+        if (pending.size() >= BATCH_SIZE) {
+            flush();
+        } else if (pending.size() == 1) {
+            flushTask.schedule(BATCH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Deliver all pending objects now.
+     */
+    synchronized void flush() {
+        flushTask.cancel();
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<MatchingObject.Def> batch = pending;
+        pending = new ArrayList<>(BATCH_SIZE);
+        displayer.addMatchingObjects(batch);
+    }
+}
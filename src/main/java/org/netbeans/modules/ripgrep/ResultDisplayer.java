@@ -18,6 +18,8 @@
  */
 package org.netbeans.modules.ripgrep;
 
+import java.util.Collections;
+import java.util.List;
 import javax.swing.JComponent;
 import org.netbeans.modules.ripgrep.ui.BasicAbstractResultsPanel;
 import org.netbeans.modules.ripgrep.ui.BasicReplaceResultsPanel;
@@ -65,14 +67,19 @@ class ResultDisplayer extends SearchResultsDisplayer<MatchingObject.Def> {
 
     @Override
     public void addMatchingObject(MatchingObject.Def object) {
-        if (resultModel.objectFound(object.getFileObject(), object.getCharset(),
-                object.getTextDetails())) {
+        addMatchingObjects(Collections.singletonList(object));
+    }
+
+    /**
+     * Add several found objects, updating the results panel only once.
+     */
+    void addMatchingObjects(List<MatchingObject.Def> objects) {
+        List<MatchingObject> added = resultModel.objectsFound(objects);
+        if (!added.isEmpty()) {
             resultPanel.update();
-            resultPanel.addMatchingObject(
-                    resultModel.getMatchingObjects().get(
-                    resultModel.size() - 1));
+            resultPanel.addMatchingObjects(added);
         }
-        if (resultModel.wasLimitReached()) {
+        if (resultModel.wasLimitReached() && !resultModel.canOverflow()) {
             composition.terminate();
         }
     }
@@ -104,6 +111,12 @@ class ResultDisplayer extends SearchResultsDisplayer<MatchingObject.Def> {
     @Override
     public void searchFinished() {
         resultPanel.searchFinished();
+        if (!composition.isTerminated()) {
+            resultModel.trackChanges(composition.getMatcher().getScopeFiles());
+            if (Constants.REPLACE_PREVIEW) {
+                resultModel.previewReplacements();
+            }
+        }
     }
 
     @Override
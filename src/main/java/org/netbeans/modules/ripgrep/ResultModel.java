@@ -20,15 +20,30 @@
 
 package org.netbeans.modules.ripgrep;
 
+import java.awt.EventQueue;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.netbeans.modules.ripgrep.Constants.Limit;
+import org.netbeans.modules.ripgrep.matcher.RipGrepReplacement;
 import org.openide.ErrorManager;
 import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
 import org.openide.nodes.Node;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
 
 
 /**
@@ -45,6 +60,18 @@ public final class ResultModel {
             "matchingObjects";                                          //NOI18N
     /** Fired when results were modified by the user. */
     public static final String PROP_RESULTS_EDIT = "resultsEdit";       //NOI18N
+    /** Fired when results beyond the limits were kept on disk. */
+    public static final String PROP_OVERFLOW = "overflow";              //NOI18N
+    /**
+     * Fired when a file of the search scope changed after the search
+     * finished, or when changes start to be tracked.
+     */
+    public static final String PROP_SCOPE_CHANGED = "scopeChanged";     //NOI18N
+
+    private static final Logger LOG = Logger.getLogger(
+            ResultModel.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor(
+            ResultModel.class);
 
     /** */
     private long startTime;
@@ -56,6 +83,17 @@ public final class ResultModel {
      * limit (number of found files or matches) reached during search
      */
     private Limit limitReached = null;
+    /** current limits, raised when results are loaded from the overflow */
+    private int countLimit;
+    private int detailsCountLimit;
+    /** whether results beyond the limits are kept in {@link #overflow} */
+    private boolean overflowEnabled;
+    /** results beyond the limits, created when needed */
+    private ResultSpill overflow;
+    /** whether the user removed some of the found objects */
+    private boolean removedObjects;
+    /** changes in the scope since the search finished */
+    private ScopeChangeTracker changeTracker;
     /** */
     final BasicSearchCriteria basicCriteria;
     /** */
@@ -67,9 +105,7 @@ public final class ResultModel {
     /** */
     final boolean searchAndReplace;
     /** list of matching objects (usually {@code DataObject}s) */
-    private final List<MatchingObject> matchingObjects =
-            new ArraySet<MatchingObject>(Constants.COUNT_LIMIT).ordering(false).
-            nullIsAllowed(false);
+    private final ArraySet<MatchingObject> matchingObjects;
 
     /** Contains optional finnish message often reason why finished. */
     private String finishMessage;
@@ -93,6 +129,12 @@ public final class ResultModel {
 	basicCriteria = basicSearchCriteria;
 	isFullText = (basicCriteria != null) && basicCriteria.isFullText();        
         startTime = -1;
+        countLimit = Constants.getCountLimit();
+        detailsCountLimit = Constants.getDetailsCountLimit();
+        // replacing needs all matches reviewed in the results
+        overflowEnabled = Constants.isLimitOverflow() && !searchAndReplace;
+        matchingObjects = new ArraySet<MatchingObject>(countLimit)
+                .ordering(false).nullIsAllowed(false);
     }
 
     /**
@@ -102,14 +144,20 @@ public final class ResultModel {
      * @param mo Matching object to remove.
      */
     public synchronized boolean remove(MatchingObject mo) {
+        return remove(mo, true);
+    }
+
+    /**
+     * @param byUser whether the user removed the object, which keeps later
+     * searches from being narrowed to these results
+     */
+    private boolean remove(MatchingObject mo, boolean byUser) {
         if (matchingObjects.remove(mo)) {
-            totalDetailsCount -= mo.getMatchesCount();
-            int deselected = 0;
-            if (mo.getTextDetails() != null) {
-                for (TextDetail td : mo.getTextDetails()) {
-                    deselected += td.isSelected() ? -1 : 0;
-                }
+            if (byUser) {
+                removedObjects = true;
             }
+            totalDetailsCount -= mo.getMatchesCount();
+            int deselected = -mo.getSelectedMatchesCount();
             mo.cleanup();
             // inform model listeners, old object contains removed object
             propertyChangeSupport.firePropertyChange(PROP_RESULTS_EDIT,
@@ -125,6 +173,14 @@ public final class ResultModel {
         return false;
     }
 
+    /**
+     * Called when the file object of a matching object was replaced. That
+     * changes hash code of the matching object.
+     */
+    synchronized void fileObjectChanged(MatchingObject mo) {
+        matchingObjects.rehash();
+    }
+
     public synchronized void removeDetailMatch(MatchingObject mo,
             TextDetail txtDetail) {
 
@@ -135,7 +191,7 @@ public final class ResultModel {
         propertyChangeSupport.firePropertyChange(PROP_RESULTS_EDIT,
                 null, null);
         // delete parent node if no children left
-        if (mo.textDetails.isEmpty()) {
+        if (mo.getDetailsCount() == 0) {
             remove(mo);
         }
     }
@@ -160,6 +216,14 @@ public final class ResultModel {
                 matchingObj.cleanup();
             }
         }
+        if (overflow != null) {
+            overflow.close();
+            overflow = null;
+        }
+        overflowEnabled = false;
+        if (changeTracker != null) {
+            changeTracker.stop();
+        }
         
         // eliminate search group content
         // no other way then leaving it on GC, it should work because
@@ -180,28 +244,442 @@ public final class ResultModel {
     public synchronized boolean objectFound(FileObject object, Charset charset,
             List<TextDetail> textDetails) {
         assert limitReached == null;
-        MatchingObject mo = new MatchingObject(this, object, charset,
-                textDetails);
-        boolean added = add(mo);
-        if(added) {
-            totalDetailsCount += getDetailsCount(mo);
-            int newSelectedMatches = 0;
-            if (mo.getTextDetails() != null) {
-                mo.addPropertyChangeListener(matchingObjectListener);
-                for (TextDetail td : mo.getTextDetails()) {
-                    if (td.isSelected()) {
-                        newSelectedMatches++;
+        MatchingObject mo = addFound(new MatchingObject(this, object, charset,
+                textDetails));
+        if (mo != null) {
+            updateSelected(getSelectedCount(mo));
+            propertyChangeSupport.firePropertyChange(PROP_MATCHING_OBJECTS,
+                    null, null);
+        }
+        return mo != null;
+    }
+
+    /**
+     * Notifies this result model of several newly found matching objects.
+     * Listeners are notified once for the whole batch. Objects following the
+     * one that reached a limit are kept on disk if the overflow is enabled,
+     * ignored otherwise.
+     *
+     * @param  defs  found objects
+     * @return  matching objects accepted by this result model, in the order
+     *          of {@code defs}
+     */
+    public synchronized List<MatchingObject> objectsFound(
+            List<MatchingObject.Def> defs) {
+        List<MatchingObject> added = new ArrayList<>(defs.size());
+        int newSelectedMatches = 0;
+        int overflown = 0;
+        for (MatchingObject.Def def : defs) {
+            if (limitReached != null) {
+                if (!overflow(def)) {
+                    break;
+                }
+                overflown++;
+                continue;
+            }
+            MatchingObject mo = addFound(createMatchingObject(def));
+            if (mo != null) {
+                added.add(mo);
+                newSelectedMatches += getSelectedCount(mo);
+            } else if (limitReached != null) {
+                // rejected because of the limit
+                if (!overflow(def)) {
+                    break;
+                }
+                overflown++;
+            }
+        }
+        if (!added.isEmpty()) {
+            updateSelected(newSelectedMatches);
+            propertyChangeSupport.firePropertyChange(PROP_MATCHING_OBJECTS,
+                    null, null);
+        }
+        if (overflown > 0) {
+            propertyChangeSupport.firePropertyChange(PROP_OVERFLOW, null,
+                    null);
+        }
+        return added;
+    }
+
+    /**
+     * Lets the results be {@linkplain #refreshChanged() refreshed}
+     * incrementally. Changes are recorded from the first refresh on.
+     *
+     * @param roots Paths of the roots of the search scope.
+     */
+    synchronized void trackChanges(List<String> roots) {
+        if (searchAndReplace || changeTracker != null) {
+            return;
+        }
+        List<File> files = new ArrayList<>(roots.size());
+        for (String root : roots) {
+            files.add(new File(root));
+        }
+        changeTracker = new ScopeChangeTracker(files,
+                () -> propertyChangeSupport.firePropertyChange(
+                        PROP_SCOPE_CHANGED, null, null));
+        propertyChangeSupport.firePropertyChange(PROP_SCOPE_CHANGED, null,
+                null);
+    }
+
+    /**
+     * Lets rg compute the replacements of all matches in background, so
+     * that they are shown in the results before the replace.
+     */
+    void previewReplacements() {
+        String replacement = basicCriteria == null ? null
+                : basicCriteria.getRipGrepReplacement();
+        if (!searchAndReplace || replacement == null
+                || !basicComposition.getMatcher().canPreviewReplacements()) {
+            return;
+        }
+        Map<String, MatchingObject> byPath = new HashMap<>();
+        for (MatchingObject mo : getMatchingObjects()) {
+            File file = FileUtil.toFile(mo.getFileObject());
+            if (file != null) {
+                byPath.put(file.getPath(), mo);
+            }
+        }
+        if (byPath.isEmpty()) {
+            return;
+        }
+        RP.post(() -> {
+            List<RipGrepReplacement> ofFile = new ArrayList<>();
+            try {
+                basicComposition.readReplacements(
+                        new ArrayList<>(byPath.keySet()), replacement,
+                        (RipGrepReplacement r) -> {
+                    if (!ofFile.isEmpty() && !ofFile.get(0).getPath()
+                            .equals(r.getPath())) {
+                        setReplacements(byPath, ofFile);
+                    }
+                    ofFile.add(r);
+                });
+                setReplacements(byPath, ofFile);
+            } catch (IOException ex) {
+                LOG.log(Level.INFO, "Cannot preview replacements", ex); //NOI18N
+            }
+        });
+    }
+
+    private static void setReplacements(Map<String, MatchingObject> byPath,
+            List<RipGrepReplacement> ofFile) {
+        if (!ofFile.isEmpty()) {
+            MatchingObject mo = byPath.get(ofFile.get(0).getPath());
+            if (mo != null) {
+                // the nodes of shown details are updated
+                List<RipGrepReplacement> replacements = new ArrayList<>(ofFile);
+                EventQueue.invokeLater(() -> mo.setReplacements(replacements));
+            }
+            ofFile.clear();
+        }
+    }
+
+    /**
+     * Tells whether changes in the scope are recorded, see
+     * {@link #refreshChanged()}.
+     */
+    public synchronized boolean isTrackingChanges() {
+        return changeTracker != null;
+    }
+
+    /**
+     * Tells whether files of the scope may have changed since the search
+     * finished or the last {@link #refreshChanged()}. Changes are not known
+     * before the first refresh.
+     */
+    public synchronized boolean hasScopeChanges() {
+        return changeTracker != null && (!changeTracker.isStarted()
+                || changeTracker.hasChanges());
+    }
+
+    /**
+     * Searches again the files and folders that changed since the search
+     * finished or since the last call. Results of changed files are
+     * refreshed, or removed if they do not match any more, and new results
+     * are added. Must not be called in the event dispatch thread.
+     *
+     * <p>The first call starts recording changes. Files changed before are
+     * found by their timestamps, among the files rg lists in the scope.</p>
+     *
+     * @return  matching objects added to this result model
+     */
+    public List<MatchingObject> refreshChanged() {
+        ScopeChangeTracker tracker;
+        synchronized (this) {
+            tracker = changeTracker;
+        }
+        if (tracker == null) {
+            return Collections.emptyList();
+        }
+        List<File> changed;
+        List<String> paths;
+        List<MatchingObject.Def> defs;
+        try {
+            if (tracker.start()) {
+                // timestamps may be as coarse as two seconds
+                paths = basicComposition.findModified(getStartTime() - 2000);
+                changed = getDeletedFiles();
+                for (String path : paths) {
+                    changed.add(new File(path));
+                }
+            } else {
+                changed = tracker.takeChanged();
+                if (changed.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                paths = new ArrayList<>(changed.size());
+                for (File file : changed) {
+                    if (file.exists()) {
+                        paths.add(file.getPath());
                     }
                 }
-                updateSelected(newSelectedMatches);
+                if (!paths.isEmpty()) {
+                    paths = basicComposition.filterSearched(paths,
+                            getWalkedFolders());
+                }
             }
+            defs = paths.isEmpty() ? Collections.emptyList()
+                    : basicComposition.searchAgain(paths);
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Cannot refresh results", ex);         //NOI18N
+            return Collections.emptyList();
+        }
+        return refreshed(new HashSet<>(changed), defs);
+    }
+
+    private synchronized List<MatchingObject> refreshed(Set<File> changed,
+            List<MatchingObject.Def> defs) {
+
+        Map<FileObject, MatchingObject> byFile = new HashMap<>();
+        for (MatchingObject mo : matchingObjects) {
+            byFile.put(mo.getFileObject(), mo);
+        }
+        List<MatchingObject> added = new ArrayList<>();
+        int newSelectedMatches = 0;
+        for (MatchingObject.Def def : defs) {
+            MatchingObject mo = byFile.remove(def.getFileObject());
+            if (mo != null) {
+                totalDetailsCount -= mo.getMatchesCount();
+                mo.refresh(def);
+                totalDetailsCount += mo.getMatchesCount();
+            } else if (limitReached == null) {
+                mo = addFound(createMatchingObject(def));
+                if (mo != null) {
+                    added.add(mo);
+                    newSelectedMatches += getSelectedCount(mo);
+                }
+            }
+        }
+        // changed results that do not match any more
+        for (MatchingObject mo : byFile.values()) {
+            if (isUnder(FileUtil.toFile(mo.getFileObject()), changed)) {
+                remove(mo, false);
+            }
+        }
+        if (!added.isEmpty()) {
+            updateSelected(newSelectedMatches);
             propertyChangeSupport.firePropertyChange(PROP_MATCHING_OBJECTS,
                     null, null);
+        }
+        propertyChangeSupport.firePropertyChange(PROP_RESULTS_EDIT, null,
+                null);
+        return added;
+    }
+
+    /**
+     * Files of found objects that do not exist any more.
+     */
+    private synchronized List<File> getDeletedFiles() {
+        List<File> deleted = new ArrayList<>();
+        for (MatchingObject mo : matchingObjects) {
+            File file = FileUtil.toFile(mo.getFileObject());
+            if (file != null && !file.exists()) {
+                deleted.add(file);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Folders of the found files and their parents.
+     */
+    private synchronized Set<String> getWalkedFolders() {
+        Set<String> folders = new HashSet<>();
+        for (MatchingObject mo : matchingObjects) {
+            File file = FileUtil.toFile(mo.getFileObject());
+            for (File f = file == null ? null : file.getParentFile();
+                    f != null && folders.add(f.getPath());
+                    f = f.getParentFile()) {
+                // parents of a known folder are known
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * Checks whether the file or one of its parents is in the set.
+     */
+    private static boolean isUnder(File file, Set<File> files) {
+        for (File f = file; f != null; f = f.getParentFile()) {
+            if (files.contains(f)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keep an object found beyond the limits on disk.
+     *
+     * @return {@code false} if the overflow is disabled or full.
+     */
+    private boolean overflow(MatchingObject.Def def) {
+        if (!overflowEnabled) {
+            return false;
+        }
+        try {
+            if (overflow == null) {
+                overflow = new ResultSpill(basicCriteria.getSearchPattern());
+            }
+            if (overflow.size() >= Constants.OVERFLOW_COUNT_LIMIT) {
+                overflowEnabled = false;
+                return false;
+            }
+            overflow.write(def);
+            return true;
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Cannot keep results on disk", ex);     //NOI18N
+            overflowEnabled = false;
+            return false;
+        }
+    }
+
+    /**
+     * Tells whether objects found beyond the limits can still be kept, so
+     * that the search does not have to be stopped.
+     */
+    public synchronized boolean canOverflow() {
+        return overflowEnabled;
+    }
+
+    /**
+     * Whether this model holds every object found by the search: no limit
+     * was reached and no object was removed.
+     */
+    synchronized boolean isComplete() {
+        return limitReached == null && overflow == null && !removedObjects;
+    }
+
+    /**
+     * Files of all found objects, including those kept on disk. Files
+     * deleted meanwhile are skipped.
+     *
+     * @return the files, or {@code null} if they cannot be read from disk.
+     */
+    public synchronized List<FileObject> getFoundFiles() {
+        List<FileObject> files = new ArrayList<>(size() + getOverflowCount());
+        for (MatchingObject mo : matchingObjects) {
+            if (mo.getFileObject().isValid()) {
+                files.add(mo.getFileObject());
+            }
+        }
+        if (overflow != null) {
+            try {
+                files.addAll(overflow.getFiles());
+            } catch (IOException ex) {
+                LOG.log(Level.INFO,
+                        "Cannot read results from disk", ex);          //NOI18N
+                return null;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Number of found objects kept on disk.
+     */
+    public synchronized int getOverflowCount() {
+        return overflow == null ? 0 : overflow.size();
+    }
+
+    /**
+     * Raise the limits by their initial values and add objects kept on disk
+     * until a limit is reached again.
+     *
+     * @return  matching objects added to this result model
+     */
+    public synchronized List<MatchingObject> loadOverflow() {
+        if (overflow == null || overflow.size() == 0) {
+            return Collections.emptyList();
+        }
+        countLimit += Constants.getCountLimit();
+        detailsCountLimit += Constants.getDetailsCountLimit();
+        matchingObjects.setLimit(countLimit);
+        limitReached = null;
+        List<MatchingObject> added = new ArrayList<>();
+        int newSelectedMatches = 0;
+        try {
+            MatchingObject.Def def;
+            while (limitReached == null && (def = overflow.read()) != null) {
+                MatchingObject mo = addFound(createMatchingObject(def));
+                if (mo != null) {
+                    added.add(mo);
+                    newSelectedMatches += getSelectedCount(mo);
+                } else if (limitReached != null) {
+                    overflow.unread(def);
+                }
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Cannot read results from disk", ex);  //NOI18N
+            overflow.close();
+            overflow = null;
+            overflowEnabled = false;
+        }
+        if (!added.isEmpty()) {
+            updateSelected(newSelectedMatches);
+            propertyChangeSupport.firePropertyChange(PROP_MATCHING_OBJECTS,
+                    null, null);
+        }
+        propertyChangeSupport.firePropertyChange(PROP_OVERFLOW, null, null);
+        return added;
+    }
+
+    /**
+     * Create a matching object for a definition. Text details kept in a match
+     * store stay there until they are needed.
+     */
+    private MatchingObject createMatchingObject(MatchingObject.Def def) {
+        if (def.getMatches() != null) {
+            return new MatchingObject(this, def.getFileObject(),
+                    def.getCharset(), def.getMatches());
+        } else {
+            return new MatchingObject(this, def.getFileObject(),
+                    def.getCharset(), def.getTextDetails());
+        }
+    }
+
+    /**
+     * Add a matching object, without notifying listeners.
+     *
+     * @return the added object, or {@code null} if it was not accepted.
+     */
+    private MatchingObject addFound(MatchingObject mo) {
+        boolean added = add(mo);
+        if(added) {
+            totalDetailsCount += getDetailsCount(mo);
+            if (mo.hasTextDetails()) {
+                mo.addPropertyChangeListener(matchingObjectListener);
+            }
         } else {
             mo.cleanup();
         }
         checkLimits();
-        return added;
+        return added ? mo : null;
+    }
+
+    private int getSelectedCount(MatchingObject mo) {
+        return mo.hasTextDetails() ? mo.getSelectedMatchesCount() : 0;
     }
 
     private boolean add(MatchingObject matchingObject) {
@@ -222,7 +700,7 @@ public final class ResultModel {
 //            return true;
 //        }
 //        else
-        if (totalDetailsCount >= Constants.DETAILS_COUNT_LIMIT) {
+        if (totalDetailsCount >= detailsCountLimit) {
             limitReached = Limit.MATCHES_COUNT_LIMIT;
             return true;
         }
@@ -429,8 +907,18 @@ public final class ResultModel {
 
     /**
      */
-    public String getLimitDisplayName() {
-        return (limitReached != null) ? limitReached.getDisplayName() : null;
+    public synchronized String getLimitDisplayName() {
+        if (limitReached == null) {
+            return null;
+        }
+        int overflowCount = getOverflowCount();
+        if (overflowCount > 0) {
+            return NbBundle.getMessage(ResultModel.class,
+                    "TEXT_MSG_LIMIT_OVERFLOW", overflowCount);          //NOI18N
+        }
+        return limitReached.getDisplayName(
+                limitReached == Limit.FILES_COUNT_LIMIT
+                ? countLimit : detailsCountLimit);
     }
 
     /** This exception stoped search */
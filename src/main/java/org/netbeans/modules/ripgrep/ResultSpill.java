@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.api.search.SearchPattern;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.URLMapper;
+import org.openide.loaders.DataObject;
+import org.openide.loaders.DataObjectNotFoundException;
+
+/**
+ * Temporary file keeping found objects that exceed the limits of a
+ * {@link ResultModel}. Objects are read back in the order they were written.
+ *
+ * <p>Every object is stored as the URL of its file, its charset and its
+ * {@link MatchStore}. Files deleted before their object is read back are
+ * skipped.</p>
+ */
+final class ResultSpill implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(
+            ResultSpill.class.getName());
+
+    private final File file;
+    private final SearchPattern searchPattern;
+    private final DataOutputStream out;
+    private DataInputStream in;
+    private int written;
+    private int read;
+    private MatchingObject.Def pushedBack;
+
+    ResultSpill(SearchPattern searchPattern) throws IOException {
+        this.searchPattern = searchPattern;
+        this.file = File.createTempFile("fast-search", ".results");    //NOI18N
+        this.file.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+    }
+
+    /**
+     * Number of objects that have not been read back yet.
+     */
+    synchronized int size() {
+        return written - read + (pushedBack == null ? 0 : 1);
+    }
+
+    synchronized void write(MatchingObject.Def def) throws IOException {
+        Charset charset = def.getCharset();
+        out.writeUTF(def.getFileObject().toURL().toExternalForm());
+        out.writeUTF(charset == null ? "" : charset.name());            //NOI18N
+        MatchStore matches = def.getMatches();
+        if (matches == null) {
+            matches = toMatchStore(def.getTextDetails());
+        }
+        matches.writeTo(out);
+        written++;
+    }
+
+    private MatchStore toMatchStore(List<TextDetail> details) {
+        MatchStore matches = new MatchStore(null, searchPattern);
+        if (details != null) {
+            for (TextDetail td : details) {
+                matches.add(td.getLine(), td.getColumn(),
+                        td.getStartOffset(), td.getEndOffset(),
+                        td.getLineText().toString(), td.getMatchedText());
+                // rg offsets and columns count bytes
+                matches.getLineIndex().add(td.getLine(),
+                        td.getStartOffset() - (td.getColumn() - 1));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Reads the next object.
+     *
+     * @return the next object, or {@code null} if all written objects have
+     * been read.
+     */
+    synchronized MatchingObject.Def read() throws IOException {
+        if (pushedBack != null) {
+            MatchingObject.Def def = pushedBack;
+            pushedBack = null;
+            return def;
+        }
+        while (read < written) {
+            // the buffer can end in the middle of an object
+            out.flush();
+            if (in == null) {
+                in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file)));
+            }
+            MatchingObject.Def def = readDef();
+            read++;
+            if (def != null) {
+                return def;
+            }
+        }
+        return null;
+    }
+
+    private MatchingObject.Def readDef() throws IOException {
+        String url = in.readUTF();
+        String charsetName = in.readUTF();
+        FileObject fo = URLMapper.findFileObject(new URL(url));
+        DataObject dob = null;
+        if (fo != null) {
+            try {
+                dob = DataObject.find(fo);
+            } catch (DataObjectNotFoundException ex) {
+                LOG.log(Level.FINE, null, ex);
+            }
+        }
+        MatchStore matches = MatchStore.readFrom(in, dob, searchPattern);
+        if (dob == null) {
+            return null;
+        }
+        return new MatchingObject.Def(fo, charsetName.isEmpty() ? null
+                : Charset.forName(charsetName), matches);
+    }
+
+    /**
+     * Files of the objects that have not been read back yet. The objects
+     * stay in the spill. Files deleted meanwhile are skipped.
+     */
+    synchronized List<FileObject> getFiles() throws IOException {
+        List<FileObject> files = new ArrayList<>(size());
+        if (pushedBack != null) {
+            files.add(pushedBack.getFileObject());
+        }
+        out.flush();
+        try (DataInputStream data = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            for (int i = 0; i < written; i++) {
+                String url = data.readUTF();
+                data.readUTF();
+                MatchStore.readFrom(data, null, searchPattern);
+                if (i >= read) {
+                    FileObject fo = URLMapper.findFileObject(new URL(url));
+                    if (fo != null) {
+                        files.add(fo);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Makes the object returned by the last {@link #read()} the next one to
+     * read.
+     */
+    synchronized void unread(MatchingObject.Def def) {
+        assert pushedBack == null;
+        pushedBack = def;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+            if (in != null) {
+                in.close();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, null, ex);
+        }
+        if (!file.delete()) {
+            LOG.log(Level.FINE, "Cannot delete {0}", file);             //NOI18N
+        }
+    }
+}
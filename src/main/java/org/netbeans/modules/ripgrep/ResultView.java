@@ -498,7 +498,9 @@ public final class ResultView extends TopComponent {
             tabs.validate();
         }
         validate();
-        requestActive();
+        if (!searchTask.isIncremental()) {
+            requestActive();
+        }
         updateTooltip();
         return panel;
     }
@@ -556,6 +558,14 @@ public final class ResultView extends TopComponent {
         setTabToReuse(getCurrentResultViewPanel());
     }
 
+    /**
+     * Mark the tab showing results of the search task as reusable. No tab is
+     * reused if it was closed already.
+     */
+    synchronized void markTabAsReusable(SearchTask task) {
+        setTabToReuse(searchToViewMap.get(task));
+    }
+
     /**
      * Set that no tab should be reused. Clears effect of the last invocation of
      * method {@link #markCurrentTabAsReusable() }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Records files and folders of the search scope that were created, changed,
+ * renamed or deleted after tracking started, so that only they have to be
+ * searched again. Tracking is started when the user first refreshes the
+ * changed results, as registering the listeners walks the whole scope.
+ */
+final class ScopeChangeTracker extends FileChangeAdapter {
+
+    private final List<File> roots;
+    private final Runnable onChange;
+    private final Set<File> changed = new LinkedHashSet<>();
+    private boolean tracking;
+    private boolean stopped;
+    /** whether the listeners are registered and must be removed */
+    private boolean registered;
+
+    /**
+     * @param roots Roots of the search scope.
+     * @param onChange Called when a change of a file or folder not recorded
+     * yet is recorded.
+     */
+    ScopeChangeTracker(List<File> roots, Runnable onChange) {
+        this.roots = roots;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Starts tracking in the calling thread, unless it was started or stopped
+     * already. The scope is walked outside the lock, so {@link #stop()} does
+     * not wait for it.
+     *
+     * @return whether tracking started now
+     */
+    boolean start() {
+        synchronized (this) {
+            if (tracking || stopped) {
+                return false;
+            }
+            tracking = true;
+        }
+        for (File root : roots) {
+            FileUtil.addRecursiveListener(this, root);
+        }
+        boolean remove;
+        synchronized (this) {
+            remove = stopped;
+            registered = !stopped;
+        }
+        if (remove) {
+            removeListeners();
+        }
+        return true;
+    }
+
+    synchronized boolean isStarted() {
+        return tracking;
+    }
+
+    /**
+     * Stops tracking for good.
+     */
+    void stop() {
+        boolean remove;
+        synchronized (this) {
+            stopped = true;
+            tracking = false;
+            changed.clear();
+            remove = registered;
+            registered = false;
+        }
+        if (remove) {
+            removeListeners();
+        }
+    }
+
+    private void removeListeners() {
+        for (File root : roots) {
+            FileUtil.removeRecursiveListener(this, root);
+        }
+    }
+
+    synchronized boolean hasChanges() {
+        return !changed.isEmpty();
+    }
+
+    /**
+     * Returns the changes recorded so far and forgets them.
+     */
+    synchronized List<File> takeChanged() {
+        List<File> result = new ArrayList<>(changed);
+        changed.clear();
+        return result;
+    }
+
+    private void record(FileEvent fe) {
+        File file = FileUtil.toFile(fe.getFile());
+        if (file == null) {
+            return;
+        }
+        boolean added;
+        synchronized (this) {
+            if (!tracking) {
+                return;
+            }
+            added = changed.add(file);
+        }
+        if (added) {
+            onChange.run();
+        }
+    }
+
+    @Override
+    public void fileFolderCreated(FileEvent fe) {
+        record(fe);
+    }
+
+    @Override
+    public void fileDataCreated(FileEvent fe) {
+        record(fe);
+    }
+
+    @Override
+    public void fileChanged(FileEvent fe) {
+        record(fe);
+    }
+
+    @Override
+    public void fileDeleted(FileEvent fe) {
+        record(fe);
+    }
+
+    @Override
+    public void fileRenamed(FileRenameEvent fe) {
+        record(fe);
+    }
+}
@@ -21,6 +21,7 @@ package org.netbeans.modules.ripgrep;
 import java.awt.Component;
 import java.awt.Dialog;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -48,6 +49,7 @@ import org.openide.awt.Mnemonics;
 import org.openide.util.HelpCtx;
 import org.openide.util.Lookup;
 import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -56,6 +58,8 @@ import org.openide.util.NbBundle;
 public class SearchPanel extends JPanel implements FocusListener,
         ActionListener {
 
+    private static final RequestProcessor RP = new RequestProcessor(
+            SearchPanel.class);
     private static SearchPanel currentlyShown = null;
     private boolean replacing;
     private List<PresenterProxy> presenters;
@@ -72,6 +76,19 @@ public class SearchPanel extends JPanel implements FocusListener,
      * Open in new Tab checkbox
      */
     private JCheckBox newTabCheckBox;
+    /**
+     * Search while typing checkbox, {@code null} in replace mode
+     */
+    private JCheckBox incrementalCheckBox;
+    /**
+     * Search started while typing, whose tab is reused by the next one
+     */
+    private SearchTask incrementalTask;
+    /**
+     * Starts a search when the criteria have not changed for a while
+     */
+    private final RequestProcessor.Task incrementalSearch = RP.create(
+            () -> EventQueue.invokeLater(this::searchIncrementally));
     /**
      * Tabbed pane if there are extra providers.
      */
@@ -132,6 +149,18 @@ public class SearchPanel extends JPanel implements FocusListener,
         newTabCheckBox.setMaximumSize(new Dimension(1000, 200));
         newTabCheckBox.setSelected(
                 FindDialogMemory.getDefault().isOpenInNewTab());
+        if (!replacing) {
+            incrementalCheckBox = new JCheckBox(NbBundle.getMessage(
+                    SearchPanel.class, "TEXT_BUTTON_SEARCH_WHILE_TYPING")); //NOI18N
+            incrementalCheckBox.setMaximumSize(new Dimension(1000, 200));
+            incrementalCheckBox.setSelected(
+                    FindDialogMemory.getDefault().isSearchWhileTyping());
+            incrementalCheckBox.addActionListener((ActionEvent e) -> {
+                FindDialogMemory.getDefault().setSearchWhileTyping(
+                        incrementalCheckBox.isSelected());
+                scheduleIncrementalSearch();
+            });
+        }
         initLocalStrings();
         initAccessibility();
     }
@@ -181,6 +210,9 @@ public class SearchPanel extends JPanel implements FocusListener,
         okButton.setToolTipText(descSearchContinue);
         cancelButton.getAccessibleContext().setAccessibleDescription(NbBundle.getMessage(SearchPanel.class, "ACS_TEXT_BUTTON_CANCEL")); // NOI18N
         newTabCheckBox.getAccessibleContext().setAccessibleDescription(NbBundle.getMessage(SearchPanel.class, "ACS_TEXT_BUTTON_NEW_TAB")); //NOI18N
+        if (incrementalCheckBox != null) {
+            incrementalCheckBox.getAccessibleContext().setAccessibleDescription(NbBundle.getMessage(SearchPanel.class, "ACS_TEXT_BUTTON_SEARCH_WHILE_TYPING")); //NOI18N
+        }
     }
 
     /**
@@ -229,7 +261,9 @@ public class SearchPanel extends JPanel implements FocusListener,
 
         dialogDescriptor.setTitle(NbBundle.getMessage(getClass(), titleMsgKey));
         dialogDescriptor.createNotificationLineSupport();
-        dialogDescriptor.setAdditionalOptions(new Object[] {newTabCheckBox});
+        dialogDescriptor.setAdditionalOptions(incrementalCheckBox == null
+                ? new Object[] {newTabCheckBox}
+                : new Object[] {incrementalCheckBox, newTabCheckBox});
 
         dialog = DialogDisplayer.getDefault().createDialog(dialogDescriptor);
         dialog.addWindowListener(new DialogCloseListener());
@@ -305,9 +339,15 @@ public class SearchPanel extends JPanel implements FocusListener,
         if (selectedPresenter != null) {
             SearchComposition<?> sc = selectedPresenter.composeSearch();
             if (sc != null) {
+                incrementalSearch.cancel();
                 SearchTask st = new SearchTask(sc, replacing);
                 boolean openInNewTab = newTabCheckBox.isSelected();
-                if (!openInNewTab) {
+                if (incrementalTask != null) {
+                    // the results shown while typing are replaced
+                    Manager.getInstance().stopSearching(incrementalTask);
+                    ResultView.getInstance().markTabAsReusable(incrementalTask);
+                    incrementalTask = null;
+                } else if (!openInNewTab) {
                     ResultView.getInstance().markCurrentTabAsReusable();
                 }
                 FindDialogMemory.getDefault().setOpenInNewTab(openInNewTab);
@@ -322,6 +362,50 @@ public class SearchPanel extends JPanel implements FocusListener,
         ResultView.getInstance().clearReusableTab();
     }
 
+    /**
+     * Starts a search with the current criteria after a delay, if searching
+     * while typing is enabled. Changes made during the delay postpone the
+     * search.
+     */
+    private void scheduleIncrementalSearch() {
+        if (incrementalCheckBox != null && incrementalCheckBox.isSelected()
+                && dialog != null) {
+            incrementalSearch.schedule(Constants.INCREMENTAL_DELAY);
+        }
+    }
+
+    /**
+     * Searches with the current criteria, stopping the previous search started
+     * while typing and reusing its tab. The dialog keeps the focus. If the
+     * new pattern refines the previous one, only the files found by the
+     * previous search are searched.
+     */
+    private void searchIncrementally() {
+        if (dialog == null || !incrementalCheckBox.isSelected()
+                || !(selectedPresenter
+                instanceof BasicSearchProvider.BasicSearchPresenter)
+                || !selectedPresenter.isUsable(
+                        dialogDescr.getNotificationLineSupport())) {
+            return;
+        }
+        BasicComposition sc = ((BasicSearchProvider.BasicSearchPresenter)
+                selectedPresenter).composeIncrementalSearch();
+        if (sc == null) {
+            return;
+        }
+        SearchTask previous = incrementalTask;
+        if (previous != null) {
+            sc.narrowTo((BasicComposition) previous.getComposition());
+            Manager.getInstance().stopSearching(previous);
+            ResultView.getInstance().markTabAsReusable(previous);
+        } else if (!newTabCheckBox.isSelected()) {
+            ResultView.getInstance().markCurrentTabAsReusable();
+        }
+        incrementalTask = new SearchTask(sc, false);
+        incrementalTask.setIncremental(true);
+        Manager.getInstance().scheduleSearchTask(incrementalTask);
+    }
+
     /**
      * Is this panel in search-and-replace mode?
      */
@@ -374,8 +458,13 @@ public class SearchPanel extends JPanel implements FocusListener,
      * Add change listener to a presenter.
      */
     private void initChangeListener(final Presenter p) {
-        p.addChangeListener((ChangeEvent e) -> okButton.setEnabled(
-                p.isUsable(dialogDescr.getNotificationLineSupport())));
+        p.addChangeListener((ChangeEvent e) -> {
+            okButton.setEnabled(
+                    p.isUsable(dialogDescr.getNotificationLineSupport()));
+            if (p == selectedPresenter) {
+                scheduleIncrementalSearch();
+            }
+        });
     }
 
     private void updateUsability() {
@@ -408,6 +497,7 @@ public class SearchPanel extends JPanel implements FocusListener,
 
         @Override
         public void windowClosed(WindowEvent e) {
+            incrementalSearch.cancel();
             for (PresenterProxy presenter : presenters) {
                 if (presenter.isInitialized()) {
                     presenter.getPresenter().clean();
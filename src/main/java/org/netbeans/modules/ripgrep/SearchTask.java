@@ -44,6 +44,8 @@ final class SearchTask implements Runnable, Cancellable {
     private final SearchComposition<?> searchComposition;
     /** Replace mode */
     private final boolean replacing;
+    /** Started while the pattern is typed, the focus stays in the dialog */
+    private boolean incremental = false;
     /** */
     private ResultViewPanel resultViewPanel = null;    
 
@@ -83,7 +85,9 @@ final class SearchTask implements Runnable, Cancellable {
         try {
             makeResultViewBusy(true);
             searchListener.searchStarted();
-            Mutex.EVENT.writeAccess(resultViewPanel::requestFocusInWindow);
+            if (!incremental) {
+                Mutex.EVENT.writeAccess(resultViewPanel::requestFocusInWindow);
+            }
             searchComposition.start(searchListener);
         } catch (RuntimeException e) {
             searchListener.generalError(e);
@@ -158,6 +162,18 @@ final class SearchTask implements Runnable, Cancellable {
         return interrupted;
     }
 
+    /**
+     * Marks the task as started while the search pattern is typed. Such a
+     * task does not take the focus from the search dialog.
+     */
+    void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    boolean isIncremental() {
+        return incremental;
+    }
+
     SearchResultsDisplayer<?> getDisplayer() {
         return searchComposition.getSearchResultsDisplayer();
     }
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Decoded texts of files, shared by the preview and the replace.
+ *
+ * <p>Whole texts and {@link TextWindow}s are kept by the file and its
+ * timestamp, so a text of a modified file is not found any more. The least
+ * recently used texts are dropped when their total length exceeds
+ * {@link Constants#TEXT_CACHE_SIZE} characters, and all of them are held
+ * softly, so that they can be dropped when memory gets low.</p>
+ */
+final class TextCache {
+
+    private static final TextCache DEFAULT = new TextCache(
+            Constants.TEXT_CACHE_SIZE);
+
+    private final long maxSize;
+    private long size;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f,
+            true);
+
+    private TextCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    static TextCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Reads a text that is not cached.
+     */
+    interface Loader<T> {
+
+        T load() throws IOException;
+    }
+
+    /**
+     * Whole text of the file, loaded if it is not cached.
+     */
+    CharSequence getText(FileObject fo, Loader<CharSequence> loader)
+            throws IOException {
+        return get(new Key(fo, -1), loader);
+    }
+
+    /**
+     * Keeps a whole text of the file that was just read, in place of the
+     * texts cached before.
+     */
+    void putText(FileObject fo, CharSequence text) {
+        Key key = new Key(fo, -1);
+        synchronized (this) {
+            invalidate(fo);
+            put(key, text);
+        }
+    }
+
+    /**
+     * Lines around a line of the file, loaded if they are not cached.
+     *
+     * @param lineStart Offset of the line in the file.
+     */
+    TextWindow getWindow(FileObject fo, long lineStart,
+            Loader<TextWindow> loader) throws IOException {
+        return get(new Key(fo, lineStart), loader);
+    }
+
+    private <T> T get(Key key, Loader<T> loader) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                @SuppressWarnings("unchecked")
+                T value = (T) entry.value.get();
+                if (value != null) {
+                    return value;
+                }
+                remove(key);
+            }
+        }
+        T value = loader.load();
+        synchronized (this) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    private void put(Key key, Object value) {
+        int length = lengthOf(value);
+        // a big text would push out all others
+        if (value != null && length <= maxSize / 4) {
+            Entry old = entries.put(key, new Entry(value, length));
+            size += length - (old == null ? 0 : old.length);
+            evict();
+        }
+    }
+
+    private static int lengthOf(Object value) {
+        if (value instanceof TextWindow) {
+            return ((TextWindow) value).getText().length();
+        }
+        return value == null ? 0 : ((CharSequence) value).length();
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.length;
+        }
+    }
+
+    /**
+     * Drops all texts of the file, when it was changed or deleted.
+     */
+    synchronized void invalidate(FileObject fo) {
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet()
+                .iterator(); it.hasNext();) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().fileObject.equals(fo)) {
+                size -= e.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    private static final class Key {
+
+        final FileObject fileObject;
+        final long timestamp;
+        /** line offset of a window, -1 for the whole text */
+        final long part;
+
+        Key(FileObject fileObject, long part) {
+            this.fileObject = fileObject;
+            this.timestamp = fileObject.lastModified().getTime();
+            this.part = part;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return fileObject.equals(other.fileObject)
+                    && timestamp == other.timestamp && part == other.part;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileObject, timestamp, part);
+        }
+    }
+
+    private static final class Entry {
+
+        final SoftReference<Object> value;
+        final int length;
+
+        Entry(Object value, int length) {
+            this.value = new SoftReference<>(value);
+            this.length = length;
+        }
+    }
+}
@@ -23,6 +23,9 @@ import java.awt.EventQueue;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
 import java.io.CharConversionException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -85,6 +88,8 @@ public final class TextDetail implements Selectable {
     public static final int DH_GOTO = 2;
     /** Property name which indicates this detail to hide. */
     public static final int DH_HIDE = 3;
+    /** Property fired when the replacement shown in the results changes. */
+    public static final String PROP_REPLACEMENT = "replacement";       //NOI18N
     
     /** Data object. */
     private DataObject dobj;
@@ -108,6 +113,8 @@ public final class TextDetail implements Selectable {
     private int endOffset;
     /** Whole matched text */
     private String matchedText;
+    /** Replacement of the matched text computed by rg, for the preview */
+    private volatile String replacement;
     /** Selected flag */
     private boolean selected = true;
     /** Line number indent */
@@ -116,6 +123,8 @@ public final class TextDetail implements Selectable {
     private boolean showAfterDataObjectUpdated = false;
 
     private ChangeSupport changeSupport = new ChangeSupport(this);
+    /** Created when a listener is added, only the result nodes listen */
+    private PropertyChangeSupport propertyChangeSupport;
     /** Constructor using data object. 
      * @param pattern  SearchPattern used to create the hit of this DetailNode 
      */
@@ -137,6 +146,21 @@ public final class TextDetail implements Selectable {
         "MSG_CannotShowTextDetai=The text match cannot be shown."
     })
     public void showDetail(final int how) {
+        showDetail(how, true);
+    }
+
+    private void showDetail(final int how, boolean load) {
+        if (load && how != DH_HIDE && lineObj == null && !isDocumentLoaded()) {
+            EditorCookie edCookie = dobj.getLookup().lookup(
+                    EditorCookie.class);
+            if (edCookie != null) {
+                // the line set would load the document in the event thread
+                edCookie.prepareDocument().addTaskListener((Task task) -> {
+                    EventQueue.invokeLater(() -> showDetail(how, false));
+                });
+                return;
+            }
+        }
         prepareLine();
         if (lineObj == null) {
             Toolkit.getDefaultToolkit().beep();
@@ -323,6 +347,29 @@ public final class TextDetail implements Selectable {
         this.matchedText = matchedText;
     }
 
+    /**
+     * Whether the document of the file is loaded, so that its lines can be
+     * resolved cheaply.
+     */
+    private boolean isDocumentLoaded() {
+        if (dobj == null || !dobj.isValid()) {
+            return false;
+        }
+        EditorCookie edCookie = dobj.getLookup().lookup(EditorCookie.class);
+        return edCookie != null && edCookie.getDocument() != null;
+    }
+
+    /**
+     * Gets the line object if the document is loaded already. Files that are
+     * not open are not changed in the editor, their lines are resolved when
+     * the detail is shown.
+     */
+    private void prepareLoadedLine() {
+        if (isDocumentLoaded()) {
+            prepareLine();
+        }
+    }
+
     private void prepareLine() {
         if (dobj == null || !dobj.isValid()) {
             lineObj = null;
@@ -388,6 +435,42 @@ public final class TextDetail implements Selectable {
         return from;
     }
 
+    /**
+     * Replacement of the matched text shown in the results, or {@code null}
+     * if it is not known.
+     */
+    public String getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * Sets the replacement shown in the results. Fires
+     * {@link #PROP_REPLACEMENT}, change listeners are not notified, they are
+     * told about selection changes only. Details that are shown are updated
+     * in the event thread.
+     */
+    void setReplacement(String replacement) {
+        String oldReplacement = this.replacement;
+        this.replacement = replacement;
+        if (propertyChangeSupport != null) {
+            propertyChangeSupport.firePropertyChange(PROP_REPLACEMENT,
+                    oldReplacement, replacement);
+        }
+    }
+
+    void addPropertyChangeListener(PropertyChangeListener listener) {
+        if (propertyChangeSupport == null) {
+            propertyChangeSupport = new PropertyChangeSupport(this);
+        }
+        propertyChangeSupport.addPropertyChangeListener(listener);
+    }
+
+    void removePropertyChangeListener(PropertyChangeListener listener) {
+        if (propertyChangeSupport != null) {
+            propertyChangeSupport.removePropertyChangeListener(listener);
+        }
+    }
+
     @Override
     public boolean isSelected() {
         return selected;
@@ -476,8 +559,14 @@ public final class TextDetail implements Selectable {
             // A workaround for #124559 - when the detail becomes visible,
             // get the Line object. Later - if the user jumps to the document,
             // changes it and saves - the Line objects are not created for the
-            // original set of lines.
-            RP.post(DetailNode.this.txtDetail::prepareLine); // run in background - see bug #225632
+            // original set of lines. Documents that are not loaded yet are
+            // not loaded for that, the lines of files that are opened later
+            // are taken when the files are opened from the results.
+            RP.post(DetailNode.this.txtDetail::prepareLoadedLine); // run in background - see bug #225632
+            txtDetail.addPropertyChangeListener((PropertyChangeEvent e) -> {
+                htmlDisplayName = null;
+                fireDisplayNameChange(null, null);
+            });
             txtDetail.addChangeListener((ChangeEvent e) -> {
                 fireIconChange();
                 ResultsOutlineSupport.toggleParentSelected(
@@ -640,6 +729,7 @@ public final class TextDetail implements Selectable {
             }
             appendMarkedTextPrefix(sb, prefixStart, matchStart, trim);
             appendMarkedTextMatch(sb, matchStart, matchEnd, lineLen, detailLen);
+            appendReplacement(sb);
             appendMarkedTextSuffix(sb, matchEnd, suffixEnd, lineLen);
         }
 
@@ -703,6 +793,23 @@ public final class TextDetail implements Selectable {
             }
         }
 
+        /**
+         * Append the replacement of the matched text, if it is known.
+         *
+         * @param text Buffer to append to.
+         */
+        private void appendReplacement(StringBuilder text)
+                throws CharConversionException {
+
+            String replacement = txtDetail.getReplacement();
+            if (replacement != null) {
+                text.append("<font color='!controlShadow'>\u2192</font><b>"); //NOI18N
+                text.append(escape(cutLongLine(
+                        replacement.replace('\n', ' '))));
+                text.append("</b>");                                    //NOI18N
+            }
+        }
+
         /**
          * Append a part of line that is after the matched text.
          *
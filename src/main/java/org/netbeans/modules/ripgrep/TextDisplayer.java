@@ -35,9 +35,12 @@ interface TextDisplayer {
      *                   ({@code location.x} = start position,
      *                    {@code location.y} = end position);
      *                   if {@code null}, nothing is to be highlighted
+     * @param  firstLine  number of the first line of the text in the file,
+     *                    1 if the whole file is displayed
      */
     public void setText(String txt,
                         String mimeType,
-                        TextDetail location);
+                        TextDetail location,
+                        int firstLine);
     
 }
@@ -46,16 +46,24 @@ final class TextFetcher implements Runnable {
     
     /** */
     private volatile String text = null;
+    /** number of the first line of {@link #text} */
+    private volatile int firstLine = 1;
+    /** whether only the lines around the location are fetched */
+    private final boolean windowed;
     
     /**
+     * @param  windowed  fetch only the lines around the location, see
+     *                   {@link MatchingObject#getTextWindow(TextDetail)}
      */
     TextFetcher(Item source,
                 TextDisplayer receiver,
-                RequestProcessor rp) {
+                RequestProcessor rp,
+                boolean windowed) {
         assert EventQueue.isDispatchThread();
         
         this.source = source;
         this.textDisplayer = receiver;
+        this.windowed = windowed;
         this.location = source.getLocation();
         task = rp.post(this, 50);
     }
@@ -85,7 +93,8 @@ final class TextFetcher implements Runnable {
             }
             textDisplayer.setText(text,
                                   mimeType,
-                                  getLocation());
+                                  getLocation(),
+                                  firstLine);
             done = true;
         }  else {
             
@@ -101,7 +110,17 @@ final class TextFetcher implements Runnable {
                 text = invalidityDescription;
             } else {
                 try {
-                    text = source.matchingObj.getText();
+                    TextWindow window = windowed
+                            ? source.matchingObj.getTextWindow(
+                                    getFetchedLocation())
+                            : null;
+                    if (window != null) {
+                        text = window.getText();
+                        firstLine = window.getFirstLine();
+                    } else {
+                        text = source.matchingObj.getText();
+                        firstLine = 1;
+                    }
                 } catch (ClosedByInterruptException cbie) {
                     cancelled = true;
                     return;
@@ -155,6 +174,14 @@ final class TextFetcher implements Runnable {
         this.location = location;
     }
 
+    /**
+     * Location to fetch the lines around, called from the request
+     * processor's thread.
+     */
+    private synchronized TextDetail getFetchedLocation() {
+        return location;
+    }
+
     private synchronized TextDetail getLocation() {
         assert EventQueue.isDispatchThread();
         
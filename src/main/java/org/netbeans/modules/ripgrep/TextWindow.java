@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.netbeans.modules.ripgrep;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lines of a file around a given line, read without reading the whole file.
+ *
+ * <p>The window is found from the offset of the start of the line, which
+ * rg reports for every match, by scanning the file for line breaks backwards
+ * and forwards. Only charsets encoding the line feed as a single byte are
+ * supported.</p>
+ */
+final class TextWindow {
+
+    /** Number of lines shown before and after the line. */
+    static final int RADIUS = 200;
+    /** Maximum number of bytes read before and after the line start. */
+    private static final int MAX_BYTES = 1024 * 1024;
+    private static final int CHUNK = 64 * 1024;
+
+    private final String text;
+    private final int firstLine;
+
+    private TextWindow(String text, int firstLine) {
+        this.text = text;
+        this.firstLine = firstLine;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    /**
+     * Number of the first line of the text, starting at 1.
+     */
+    int getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * Tells whether windows of files in the charset can be read.
+     */
+    static boolean isSupported(Charset charset) {
+        return "\n".getBytes(charset).length == 1;                     //NOI18N
+    }
+
+    /**
+     * Reads the lines around a line.
+     *
+     * @param lineStart Offset of the first byte of the line in the file.
+     * @param line Number of the line, starting at 1.
+     */
+    static TextWindow read(File file, Charset charset, long lineStart,
+            int line) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            lineStart = Math.max(0, Math.min(lineStart, channel.size()));
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+            long start = lineStart;
+            int firstLine = line;
+            // the byte before the line start ends the previous line
+            long pos = lineStart - 1;
+            scan:
+            while (pos > 0 && firstLine > 1
+                    && lineStart - pos < MAX_BYTES) {
+                long from = Math.max(0, pos - CHUNK);
+                read(channel, buffer, from, (int) (pos - from));
+                for (int i = buffer.limit() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        start = from + i + 1;
+                        if (line - --firstLine == RADIUS) {
+                            break scan;
+                        }
+                    }
+                }
+                pos = from;
+            }
+            if (pos <= 0 && firstLine > 1 && line - firstLine < RADIUS) {
+                start = 0;
+                firstLine = 1;
+            }
+            long end = lineStart;
+            int lines = 0;
+            scan:
+            while (end < channel.size() && end - lineStart < MAX_BYTES) {
+                read(channel, buffer, end, (int) Math.min(CHUNK,
+                        channel.size() - end));
+                for (int i = 0; i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n' && ++lines > RADIUS) {
+                        end += i;
+                        break scan;
+                    }
+                }
+                end += buffer.limit();
+            }
+            end = Math.min(end, lineStart + MAX_BYTES);
+            ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+            read(channel, bytes, start, bytes.capacity());
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = decoder.decode(bytes);
+            return new TextWindow(chars.toString(), firstLine);
+        }
+    }
+
+    /**
+     * Reads {@code length} bytes from the position into the buffer, which is
+     * flipped for reading then.
+     */
+    private static void read(FileChannel channel, ByteBuffer buffer,
+            long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,644 @@
+package org.netbeans.modules.ripgrep.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index of the files under one search root.
+ *
+ * <p>The base of the index is written to a file and memory-mapped: a table of
+ * all trigrams, each pointing to the sorted ids of the files containing it.
+ * It is built in segments of at most {@link #SEGMENT_POSTINGS} postings,
+ * which are sorted in memory and merged on disk, and its postings are mapped
+ * in windows, so that the index of a big tree is not held in the heap.
+ * Files changed after the base was written are indexed again into an overlay
+ * kept in memory, and their entries in the base are ignored.</p>
+ *
+ * <p>Files bigger than {@link #MAX_FILE_SIZE} and UTF-16 files are always
+ * candidates. Binary files are never candidates, like rg does not report
+ * matches in them.</p>
+ */
+final class TrigramIndex {
+
+    private static final int MAGIC = 0x46535449;
+    private static final int VERSION = 2;
+    /** Bigger files are not indexed, they are always candidates. */
+    static final int MAX_FILE_SIZE = 4 << 20;
+    /** Bytes of a trigram table entry: trigram, offset and count. */
+    private static final int ENTRY_SIZE = 16;
+    /** Postings sorted in memory before they are written to a segment. */
+    private static final int SEGMENT_POSTINGS = 1 << 22;
+    /** Postings mapped by one buffer, a buffer cannot map 2 GB or more. */
+    private static final int WINDOW_POSTINGS = 1 << 28;
+    private static final byte FLAG_ANY = 1;
+    /** Trigrams of files that are always candidates, compared by identity. */
+    private static final int[] ANY = new int[0];
+
+    private final String root;
+
+    // base
+    private String[] paths = new String[0];
+    private long[] modified = new long[0];
+    private final Map<String, Integer> ids = new HashMap<>();
+    /** ids of base files that are always candidates */
+    private int[] anyIds = new int[0];
+    private ByteBuffer table;
+    private int trigramCount;
+    private IntBuffer[] postings;
+
+    // changes since the base was written
+    private final Map<String, int[]> overlay = new HashMap<>();
+    private final Set<String> deleted = new HashSet<>();
+    /** ids of base files in {@link #overlay} or {@link #deleted} */
+    private final BitSet stale = new BitSet();
+    /** folders of indexed files, rg walks into them */
+    private final Set<String> folders = new HashSet<>();
+
+    TrigramIndex(String root) {
+        this.root = root;
+    }
+
+    String getRoot() {
+        return root;
+    }
+
+    /**
+     * Number of indexed files.
+     */
+    synchronized int size() {
+        return paths.length - stale.cardinality() + overlay.size();
+    }
+
+    /**
+     * Files changed since the base was written.
+     */
+    synchronized int getChangedCount() {
+        return overlay.size() + deleted.size();
+    }
+
+    /**
+     * Paths and last modification times of the files in the base.
+     */
+    synchronized Map<String, Long> getBaseFiles() {
+        Map<String, Long> files = new HashMap<>(paths.length * 2);
+        for (int i = 0; i < paths.length; i++) {
+            files.put(paths[i], modified[i]);
+        }
+        return files;
+    }
+
+    /**
+     * Whether the file is indexed and not deleted.
+     */
+    synchronized boolean contains(String path) {
+        return overlay.containsKey(path)
+                || (ids.containsKey(path) && !deleted.contains(path));
+    }
+
+    /**
+     * Whether the folder is the root or holds indexed files, now or before.
+     * rg does not ignore such a folder.
+     */
+    synchronized boolean isWalked(String folder) {
+        return folder.equals(root) || folders.contains(folder);
+    }
+
+    private void addFolders(String path) {
+        for (String folder = new File(path).getParent();
+                folder != null && !folder.equals(root) && folders.add(folder);
+                folder = new File(folder).getParent()) {
+            // parents of a known folder are known
+        }
+    }
+
+    /**
+     * Indexes a file into the overlay, or removes it if it does not exist.
+     * Reads the file in the calling thread.
+     */
+    void update(File file) throws IOException {
+        String path = file.getPath();
+        if (!file.isFile()) {
+            remove(path);
+            return;
+        }
+        int[] trigrams = indexFile(file);
+        synchronized (this) {
+            overlay.put(path, trigrams);
+            deleted.remove(path);
+            markStale(path);
+            addFolders(path);
+        }
+    }
+
+    /**
+     * Removes a file, or all files of a folder.
+     */
+    synchronized void remove(String path) {
+        if (ids.containsKey(path) || overlay.containsKey(path)) {
+            removeFile(path);
+            return;
+        }
+        String prefix = path.endsWith(File.separator)
+                ? path : path + File.separator;
+        for (String p : paths) {
+            if (p.startsWith(prefix)) {
+                removeFile(p);
+            }
+        }
+        for (Iterator<String> it = overlay.keySet().iterator();
+                it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void removeFile(String path) {
+        overlay.remove(path);
+        if (markStale(path)) {
+            deleted.add(path);
+        }
+    }
+
+    private boolean markStale(String path) {
+        Integer id = ids.get(path);
+        if (id != null) {
+            stale.set(id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Files that may contain all the trigrams.
+     *
+     * @param required Sorted trigrams.
+     */
+    synchronized List<String> candidates(int[] required) {
+        List<String> candidates = new ArrayList<>();
+        int[] found = baseCandidates(required);
+        for (int id : found) {
+            if (!stale.get(id)) {
+                candidates.add(paths[id]);
+            }
+        }
+        for (int id : anyIds) {
+            if (!stale.get(id)) {
+                candidates.add(paths[id]);
+            }
+        }
+        for (Map.Entry<String, int[]> e : overlay.entrySet()) {
+            int[] trigrams = e.getValue();
+            if (trigrams == ANY || containsAll(trigrams, required)) {
+                candidates.add(e.getKey());
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Intersects the postings of the trigrams, shortest first.
+     */
+    private int[] baseCandidates(int[] required) {
+        if (table == null) {
+            return new int[0];
+        }
+        long[] entries = new long[required.length];
+        for (int i = 0; i < required.length; i++) {
+            int entry = findEntry(required[i]);
+            if (entry < 0) {
+                return new int[0];
+            }
+            int count = table.getInt(entry * ENTRY_SIZE + 12);
+            entries[i] = ((long) count << 32) | entry;
+        }
+        Arrays.sort(entries);
+        int[] result = null;
+        for (long e : entries) {
+            int entry = (int) e;
+            long offset = table.getLong(entry * ENTRY_SIZE + 4);
+            int count = table.getInt(entry * ENTRY_SIZE + 12);
+            result = result == null
+                    ? read(offset, count) : intersect(result, offset, count);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    private int findEntry(int trigram) {
+        int low = 0;
+        int high = trigramCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int t = table.getInt(mid * ENTRY_SIZE);
+            if (t < trigram) {
+                low = mid + 1;
+            } else if (t > trigram) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int posting(long index) {
+        return postings[(int) (index / WINDOW_POSTINGS)]
+                .get((int) (index % WINDOW_POSTINGS));
+    }
+
+    private int[] read(long offset, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = posting(offset + i);
+        }
+        return ids;
+    }
+
+    private int[] intersect(int[] ids, long offset, int count) {
+        int[] result = new int[Math.min(ids.length, count)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length && j < count) {
+            int id = posting(offset + j);
+            if (ids[i] < id) {
+                i++;
+            } else if (ids[i] > id) {
+                j++;
+            } else {
+                result[n++] = id;
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static boolean containsAll(int[] trigrams, int[] required) {
+        int i = 0;
+        for (int t : required) {
+            while (i < trigrams.length && trigrams[i] < t) {
+                i++;
+            }
+            if (i == trigrams.length || trigrams[i] != t) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Trigrams of a file, {@link #ANY} if it is always a candidate and none
+     * if it is binary.
+     */
+    static int[] indexFile(File file) throws IOException {
+        long length = file.length();
+        if (length > MAX_FILE_SIZE) {
+            return ANY;
+        }
+        byte[] content;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            content = new byte[(int) length];
+            int n = 0;
+            int r;
+            while (n < content.length
+                    && (r = in.read(content, n, content.length - n)) > 0) {
+                n += r;
+            }
+            length = n;
+        }
+        int n = (int) length;
+        if (n >= 2 && ((content[0] == (byte) 0xff && content[1] == (byte) 0xfe)
+                || (content[0] == (byte) 0xfe && content[1] == (byte) 0xff))) {
+            // rg decodes UTF-16 files, their bytes are not UTF-8
+            return ANY;
+        }
+        for (int i = 0; i < n; i++) {
+            if (content[i] == 0) {
+                return new int[0];
+            }
+        }
+        return Trigrams.of(content, n);
+    }
+
+    /**
+     * Indexes the files and writes a new base to the store. Changes recorded
+     * meanwhile are kept in the overlay.
+     */
+    void build(List<String> files, File store) throws IOException {
+        List<String> indexed = new ArrayList<>(files.size());
+        List<Long> times = new ArrayList<>(files.size());
+        List<Boolean> any = new ArrayList<>(files.size());
+        List<File> segments = new ArrayList<>();
+        try {
+            // trigram in the high half, file id in the low one
+            long[] buffer = new long[SEGMENT_POSTINGS];
+            int n = 0;
+            for (String path : files) {
+                File file = new File(path);
+                long time = file.lastModified();
+                int[] trigrams;
+                try {
+                    trigrams = indexFile(file);
+                } catch (IOException ex) {
+                    continue; // deleted or not readable
+                }
+                int id = indexed.size();
+                indexed.add(path);
+                times.add(time);
+                any.add(trigrams == ANY);
+                for (int t : trigrams) {
+                    if (n == buffer.length) {
+                        segments.add(writeSegment(buffer, n, store));
+                        n = 0;
+                    }
+                    buffer[n++] = ((long) t << 32) | id;
+                }
+            }
+            if (n > 0) {
+                segments.add(writeSegment(buffer, n, store));
+            }
+            write(store, indexed, times, any, segments);
+        } finally {
+            for (File segment : segments) {
+                delete(segment);
+            }
+        }
+        load(store);
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Sorts the postings and writes them to a temporary file next to the
+     * store.
+     */
+    private static File writeSegment(long[] postings, int count, File store)
+            throws IOException {
+        Arrays.sort(postings, 0, count);
+        File segment = File.createTempFile(store.getName(), ".seg",     //NOI18N
+                store.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(segment)))) {
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(postings[i]);
+            }
+        }
+        return segment;
+    }
+
+    private void write(File store, List<String> files, List<Long> times,
+            List<Boolean> any, List<File> segments) throws IOException {
+
+        IntList trigrams = new IntList();
+        IntList counts = new IntList();
+        File postingsFile = File.createTempFile(store.getName(),
+                ".postings", store.getParentFile());                    //NOI18N
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(
+                            postingsFile)))) {
+                merge(segments, trigrams, counts, out);
+            }
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream h = new DataOutputStream(header);
+            h.writeUTF(root);
+            h.writeInt(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                h.writeUTF(files.get(i));
+                h.writeLong(times.get(i));
+                h.writeByte(any.get(i) ? FLAG_ANY : 0);
+            }
+            h.writeInt(trigrams.size);
+            h.flush();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(store)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(header.size());
+                header.writeTo(out);
+                long offset = 0;
+                for (int i = 0; i < trigrams.size; i++) {
+                    out.writeInt(trigrams.values[i]);
+                    out.writeLong(offset);
+                    out.writeInt(counts.values[i]);
+                    offset += counts.values[i];
+                }
+                Files.copy(postingsFile.toPath(), out);
+            }
+        } finally {
+            delete(postingsFile);
+        }
+    }
+
+    /**
+     * Merges the sorted segments, writes the file ids and collects the
+     * trigrams with the counts of their postings.
+     */
+    private static void merge(List<File> segments, IntList trigrams,
+            IntList counts, DataOutputStream out) throws IOException {
+        List<Segment> opened = new ArrayList<>(segments.size());
+        PriorityQueue<Segment> queue = new PriorityQueue<>(
+                Math.max(1, segments.size()),
+                (Segment s1, Segment s2) -> Long.compare(s1.next, s2.next));
+        try {
+            for (File file : segments) {
+                Segment segment = new Segment(file);
+                opened.add(segment);
+                if (segment.advance()) {
+                    queue.add(segment);
+                }
+            }
+            Segment segment;
+            while ((segment = queue.poll()) != null) {
+                int t = (int) (segment.next >>> 32);
+                if (trigrams.size == 0
+                        || trigrams.values[trigrams.size - 1] != t) {
+                    trigrams.add(t);
+                    counts.add(0);
+                }
+                counts.values[counts.size - 1]++;
+                out.writeInt((int) segment.next);
+                if (segment.advance()) {
+                    queue.add(segment);
+                }
+            }
+        } finally {
+            for (Segment s : opened) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * Maps a base written by {@link #build(List, File)}.
+     *
+     * @return {@code false} if the store is not a base of this root.
+     */
+    boolean load(File store) throws IOException {
+        try (FileChannel channel = FileChannel.open(store.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(12);
+            while (start.hasRemaining() && channel.read(start) >= 0) {
+                // read the fixed header
+            }
+            start.flip();
+            if (start.remaining() < 12 || start.getInt() != MAGIC
+                    || start.getInt() != VERSION) {
+                return false;
+            }
+            int headerSize = start.getInt();
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the file table
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    header.array(), 0, header.position()));
+            if (!root.equals(in.readUTF())) {
+                return false;
+            }
+            int count = in.readInt();
+            String[] newPaths = new String[count];
+            long[] newModified = new long[count];
+            IntList newAny = new IntList();
+            for (int i = 0; i < count; i++) {
+                newPaths[i] = in.readUTF();
+                newModified[i] = in.readLong();
+                if (in.readByte() == FLAG_ANY) {
+                    newAny.add(i);
+                }
+            }
+            int newTrigramCount = in.readInt();
+            long tableStart = 12L + headerSize;
+            long tableSize = (long) newTrigramCount * ENTRY_SIZE;
+            ByteBuffer newTable = channel.map(FileChannel.MapMode.READ_ONLY,
+                    tableStart, tableSize);
+            long postingsStart = tableStart + tableSize;
+            long postingCount = (channel.size() - postingsStart) / 4;
+            IntBuffer[] newPostings = new IntBuffer[(int) ((postingCount
+                    + WINDOW_POSTINGS - 1) / WINDOW_POSTINGS)];
+            for (int i = 0; i < newPostings.length; i++) {
+                long first = (long) i * WINDOW_POSTINGS;
+                long size = Math.min(WINDOW_POSTINGS, postingCount - first);
+                newPostings[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        postingsStart + first * 4, size * 4).asIntBuffer();
+            }
+            synchronized (this) {
+                paths = newPaths;
+                modified = newModified;
+                anyIds = Arrays.copyOf(newAny.values, newAny.size);
+                table = newTable;
+                trigramCount = newTrigramCount;
+                postings = newPostings;
+                ids.clear();
+                for (int i = 0; i < count; i++) {
+                    ids.put(newPaths[i], i);
+                }
+                folders.clear();
+                for (String path : newPaths) {
+                    addFolders(path);
+                }
+                stale.clear();
+                for (String path : overlay.keySet()) {
+                    markStale(path);
+                    addFolders(path);
+                }
+                for (Iterator<String> it = deleted.iterator(); it.hasNext();) {
+                    if (!markStale(it.next())) {
+                        it.remove();
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Forgets the overlay, when a new base containing the changes is
+     * going to be built.
+     */
+    synchronized void clearChanges() {
+        overlay.clear();
+        deleted.clear();
+        stale.clear();
+    }
+
+    /**
+     * Sorted postings of a segment, read one by one.
+     */
+    private static final class Segment implements Closeable {
+
+        private final DataInputStream in;
+        private int remaining;
+        long next;
+
+        Segment(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            remaining = in.readInt();
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            next = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    private static final class IntList {
+
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package org.netbeans.modules.ripgrep.index;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.modules.ripgrep.Constants;
+import org.netbeans.modules.ripgrep.matcher.RipGrepLauncher;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+import org.openide.modules.Places;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Trigram indexes of search roots, used to narrow a search to the files that
+ * can contain a match.
+ *
+ * <p>An index is built in background the first time its root is searched,
+ * searches are not narrowed until it is ready. Indexes are stored in the
+ * cache directory of the IDE and checked against the files on disk when they
+ * are loaded again. Files changed in the IDE or on disk are indexed again
+ * before the next search, the whole index is rebuilt when too many of them
+ * changed.</p>
+ */
+public final class TrigramIndexes {
+
+    private static final Logger LOG = Logger.getLogger(
+            TrigramIndexes.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor(
+            TrigramIndexes.class);
+    /** Reads error output of rg processes listing files. */
+    private static final RequestProcessor ERRORS_RP = new RequestProcessor(
+            TrigramIndexes.class.getName() + ".errors", 4);            //NOI18N
+    private static final String CACHE_FOLDER = "fast-search/index"; //NOI18N
+    private static final String SUFFIX = ".idx"; //NOI18N
+    /** Changed files that are kept in memory before the index is rebuilt. */
+    private static final int MIN_REBUILD_CHANGES = 1000;
+    private static TrigramIndexes defaultInstance;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private TrigramIndexes() {
+    }
+
+    public static synchronized TrigramIndexes getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new TrigramIndexes();
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Files under the roots that can contain a match of the pattern.
+     *
+     * @param roots Absolute paths of the searched files and folders.
+     * @param pattern rg search pattern.
+     * @param literal Whether the pattern is a fixed string.
+     * @param caseSensitive Whether the search is case sensitive.
+     * @return Paths of the files to search, {@code null} if the search
+     * should not be narrowed, because the index is disabled or not ready,
+     * because some roots are files, or because the pattern does not select
+     * few enough files.
+     */
+    public List<String> narrow(List<String> roots, String pattern,
+            boolean literal, boolean caseSensitive) {
+        if (!Constants.isIndexEnabled() || roots.isEmpty()) {
+            return null;
+        }
+        for (String root : roots) {
+            // only folders are indexed, files are searched directly
+            if (!new File(root).isDirectory()) {
+                return null;
+            }
+        }
+        int[] required = Trigrams.required(pattern, literal, caseSensitive);
+        if (required == null) {
+            return null;
+        }
+        List<Entry> found = new ArrayList<>(roots.size());
+        boolean ready = true;
+        for (String root : roots) {
+            Entry entry = getEntry(root);
+            found.add(entry);
+            ready &= entry.isReady();
+        }
+        if (!ready) {
+            return null;
+        }
+        List<String> candidates = new ArrayList<>();
+        int total = 0;
+        for (Entry entry : found) {
+            entry.applyChanges();
+            candidates.addAll(entry.index.candidates(required));
+            total += entry.index.size();
+            if (candidates.size() > Constants.INDEX_MAX_CANDIDATES) {
+                return null;
+            }
+        }
+        // rg walks folders quickly, a long list of paths does not pay off
+        return candidates.size() * 2 > total ? null : candidates;
+    }
+
+    private synchronized Entry getEntry(String root) {
+        Entry entry = entries.get(root);
+        if (entry == null) {
+            entry = new Entry(root);
+            entries.put(root, entry);
+            entry.open();
+        }
+        return entry;
+    }
+
+    /**
+     * Lists the files rg searches under the root by default.
+     */
+    static List<String> listFiles(String root) throws IOException {
+        return listFiles(root, -1);
+    }
+
+    /**
+     * Lists the files rg searches under the folder by default.
+     *
+     * @param maxDepth How deep to descend, -1 for no limit.
+     */
+    static List<String> listFiles(String folder, int maxDepth)
+            throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                "--files", folder));                                    //NOI18N
+        if (maxDepth >= 0) {
+            command.add(0, "--max-depth");                              //NOI18N
+            command.add(1, Integer.toString(maxDepth));
+        }
+        RipGrepLauncher launcher = RipGrepLauncher.getDefault();
+        Process process = launcher.start(command);
+        try {
+            InputStream err = process.getErrorStream();
+            ERRORS_RP.post(() -> {
+                try (InputStream is = err) {
+                    byte[] buffer = new byte[4096];
+                    while (is.read(buffer) >= 0) {
+                        // rg reports unreadable folders, they are skipped
+                    }
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, null, ex);
+                }
+            });
+            List<String> files = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(),
+                            StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    files.add(line);
+                }
+            }
+            return files;
+        } finally {
+            launcher.reclaim(process);
+        }
+    }
+
+    /**
+     * Index of one root and the changes of its files.
+     */
+    private static final class Entry extends FileChangeAdapter {
+
+        private final File root;
+        private final TrigramIndex index;
+        private final Set<File> changed = new LinkedHashSet<>();
+        private volatile boolean ready;
+        private RequestProcessor.Task rebuildTask;
+
+        Entry(String root) {
+            this.root = new File(root);
+            this.index = new TrigramIndex(root);
+        }
+
+        boolean isReady() {
+            return ready;
+        }
+
+        void open() {
+            RP.post(() -> {
+                FileUtil.addRecursiveListener(this, root);
+                try {
+                    File store = findStore();
+                    if (store != null && index.load(store)) {
+                        validate();
+                    } else {
+                        build();
+                    }
+                    ready = true;
+                } catch (IOException ex) {
+                    LOG.log(Level.INFO, "Cannot index " + root, ex);    //NOI18N
+                }
+            });
+        }
+
+        /**
+         * Indexes again the files changed while the IDE was not running.
+         */
+        private void validate() throws IOException {
+            Map<String, Long> indexed = index.getBaseFiles();
+            for (String path : listFiles(root.getPath())) {
+                Long modified = indexed.remove(path);
+                File file = new File(path);
+                if (modified == null || modified != file.lastModified()) {
+                    index.update(file);
+                }
+            }
+            for (String path : indexed.keySet()) {
+                index.remove(path);
+            }
+            if (needsRebuild()) {
+                build();
+            }
+        }
+
+        private void build() throws IOException {
+            List<String> files = listFiles(root.getPath());
+            File folder = Places.getCacheSubdirectory(CACHE_FOLDER);
+            // a new file each time, a mapped one cannot be replaced on Windows
+            File store = new File(folder, prefix() + System.currentTimeMillis()
+                    + SUFFIX);
+            synchronized (changed) {
+                // changes recorded from now on are applied to the new index
+                index.clearChanges();
+            }
+            index.build(files, store);
+            File[] old = folder.listFiles((File dir, String name)
+                    -> name.startsWith(prefix()) && name.endsWith(SUFFIX));
+            if (old != null) {
+                for (File f : old) {
+                    if (!f.equals(store) && !f.delete()) {
+                        f.deleteOnExit();
+                    }
+                }
+            }
+        }
+
+        private String prefix() {
+            return Integer.toHexString(root.getPath().hashCode()) + "-"; //NOI18N
+        }
+
+        /**
+         * The newest stored index of the root.
+         */
+        private File findStore() {
+            File folder = Places.getCacheSubdirectory(CACHE_FOLDER);
+            File[] stores = folder.listFiles((File dir, String name)
+                    -> name.startsWith(prefix()) && name.endsWith(SUFFIX));
+            File newest = null;
+            if (stores != null) {
+                for (File f : stores) {
+                    if (newest == null || f.getName().compareTo(
+                            newest.getName()) > 0) {
+                        newest = f;
+                    }
+                }
+            }
+            return newest;
+        }
+
+        private boolean needsRebuild() {
+            return index.getChangedCount() > Math.max(MIN_REBUILD_CHANGES,
+                    index.size() / 5);
+        }
+
+        /**
+         * Indexes the changed files into the overlay, before a search. New
+         * files are indexed only if rg lists them, so that files rg ignores
+         * or skips as hidden do not become candidates: their nearest folder
+         * that rg walks into is listed, as deep as needed.
+         */
+        void applyChanges() {
+            List<File> files;
+            synchronized (changed) {
+                files = new ArrayList<>(changed);
+                changed.clear();
+            }
+            Set<String> newFiles = new HashSet<>();
+            List<String> newFolders = new ArrayList<>();
+            Map<File, Integer> walks = new LinkedHashMap<>();
+            for (File file : files) {
+                String path = file.getPath();
+                if (!file.exists()) {
+                    index.remove(path);
+                } else if (file.isFile() && index.contains(path)) {
+                    update(file);
+                } else {
+                    File folder = walkedFolder(file);
+                    int depth;
+                    if (file.isDirectory()) {
+                        newFolders.add(path + File.separator);
+                        depth = -1;
+                    } else {
+                        newFiles.add(path);
+                        depth = depth(folder, file);
+                    }
+                    walks.merge(folder, depth, (Integer a, Integer b)
+                            -> a < 0 || b < 0 ? -1 : Math.max(a, b));
+                }
+            }
+            for (Map.Entry<File, Integer> walk : walks.entrySet()) {
+                List<String> listed;
+                try {
+                    listed = listFiles(walk.getKey().getPath(),
+                            walk.getValue());
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, null, ex);
+                    continue;
+                }
+                for (String path : listed) {
+                    if (newFiles.contains(path)
+                            || isUnder(path, newFolders)) {
+                        update(new File(path));
+                    }
+                }
+            }
+            if (needsRebuild()) {
+                scheduleRebuild();
+            }
+        }
+
+        private void update(File file) {
+            try {
+                index.update(file);
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, null, ex);
+                index.remove(file.getPath());
+            }
+        }
+
+        /**
+         * The nearest parent of the file that rg walks into.
+         */
+        private File walkedFolder(File file) {
+            File folder = file.getParentFile();
+            while (folder != null && !index.isWalked(folder.getPath())) {
+                folder = folder.getParentFile();
+            }
+            return folder == null ? root : folder;
+        }
+
+        private static int depth(File folder, File file) {
+            int depth = 0;
+            for (File f = file; f != null && !f.equals(folder);
+                    f = f.getParentFile()) {
+                depth++;
+            }
+            return depth;
+        }
+
+        private static boolean isUnder(String path, List<String> folders) {
+            for (String folder : folders) {
+                if (path.startsWith(folder)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized void scheduleRebuild() {
+            if (rebuildTask != null && !rebuildTask.isFinished()) {
+                return;
+            }
+            rebuildTask = RP.post(() -> {
+                try {
+                    build();
+                } catch (IOException ex) {
+                    LOG.log(Level.INFO, "Cannot index " + root, ex);    //NOI18N
+                }
+            });
+        }
+
+        private void record(FileEvent fe) {
+            File file = FileUtil.toFile(fe.getFile());
+            if (file != null) {
+                synchronized (changed) {
+                    changed.add(file);
+                }
+            }
+        }
+
+        @Override
+        public void fileChanged(FileEvent fe) {
+            record(fe);
+        }
+
+        @Override
+        public void fileDataCreated(FileEvent fe) {
+            record(fe);
+        }
+
+        @Override
+        public void fileFolderCreated(FileEvent fe) {
+            record(fe);
+        }
+
+        @Override
+        public void fileDeleted(FileEvent fe) {
+            record(fe);
+        }
+
+        @Override
+        public void fileRenamed(FileRenameEvent fe) {
+            File file = FileUtil.toFile(fe.getFile());
+            if (file != null) {
+                String ext = fe.getExt();
+                String oldName = ext.isEmpty() ? fe.getName()
+                        : fe.getName() + "." + ext;                     //NOI18N
+                synchronized (changed) {
+                    changed.add(new File(file.getParentFile(), oldName));
+                    changed.add(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.netbeans.modules.ripgrep.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Extraction of trigrams from file contents and from search patterns.
+ *
+ * <p>A trigram is three consecutive bytes of the UTF-8 text packed into an
+ * int. ASCII letters are folded to lower case, so that one index serves both
+ * case sensitive and case insensitive searches.</p>
+ */
+final class Trigrams {
+
+    /** Regex characters that are literal when escaped. */
+    private static final String ESCAPABLE = "\\.+*?()[]{}|^$/-#&~ \"'"; //NOI18N
+
+    /**
+     * Escapes without an operand that stand for a character class, an
+     * assertion or a control character.
+     */
+    private static final String CLASS_ESCAPES =
+            "dDwWsShHvVRXbBAzZGKntrfea";                                //NOI18N
+
+    private Trigrams() {
+    }
+
+    private static int fold(byte b) {
+        return (b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b & 0xff;
+    }
+
+    /**
+     * Sorted, distinct trigrams of the first {@code length} bytes.
+     */
+    static int[] of(byte[] content, int length) {
+        if (length < 3) {
+            return new int[0];
+        }
+        int[] trigrams = new int[length - 2];
+        int t = (fold(content[0]) << 8) | fold(content[1]);
+        for (int i = 2; i < length; i++) {
+            t = ((t << 8) | fold(content[i])) & 0xffffff;
+            trigrams[i - 2] = t;
+        }
+        return distinct(trigrams);
+    }
+
+    /**
+     * Trigrams that every text matching the pattern contains.
+     *
+     * @param pattern rg search pattern.
+     * @param literal Whether the pattern is a fixed string, a regular
+     * expression otherwise.
+     * @param caseSensitive Whether the search is case sensitive. Non-ASCII
+     * letters are not folded, so they are skipped in case insensitive
+     * searches.
+     * @return Sorted trigrams, {@code null} if the pattern does not require
+     * any trigram, or is not simple enough to tell.
+     */
+    static int[] required(String pattern, boolean literal,
+            boolean caseSensitive) {
+        List<String> segments = literal
+                ? split(pattern, caseSensitive)
+                : literalSegments(pattern, caseSensitive);
+        if (segments == null) {
+            return null;
+        }
+        int[] required = new int[0];
+        for (String segment : segments) {
+            byte[] bytes = segment.getBytes(StandardCharsets.UTF_8);
+            int[] trigrams = of(bytes, bytes.length);
+            int[] merged = Arrays.copyOf(required,
+                    required.length + trigrams.length);
+            System.arraycopy(trigrams, 0, merged, required.length,
+                    trigrams.length);
+            required = distinct(merged);
+        }
+        return required.length == 0 ? null : required;
+    }
+
+    /**
+     * Sorts and removes duplicates.
+     */
+    private static int[] distinct(int[] trigrams) {
+        Arrays.sort(trigrams);
+        int n = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (n == 0 || trigrams[n - 1] != trigrams[i]) {
+                trigrams[n++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, n);
+    }
+
+    /**
+     * Splits a literal at characters whose case cannot be folded.
+     */
+    private static List<String> split(String text, boolean caseSensitive) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!caseSensitive && c > 0x7f) {
+                flush(segment, segments);
+            } else {
+                segment.append(c);
+            }
+        }
+        flush(segment, segments);
+        return segments;
+    }
+
+    private static void flush(StringBuilder segment, List<String> segments) {
+        if (segment.length() >= 3) {
+            segments.add(segment.toString());
+        }
+        segment.setLength(0);
+    }
+
+    /**
+     * Literal parts of a regular expression that every match contains. Only
+     * expressions without alternatives and groups are supported.
+     *
+     * @return The parts, {@code null} if the expression is not supported.
+     */
+    private static List<String> literalSegments(String regex,
+            boolean caseSensitive) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '|':
+                case '(':
+                case ')':
+                    return null;
+                case '\\':
+                    if (i + 1 == regex.length()) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(++i);
+                    if (escaped == 'Q') {
+                        return null;
+                    } else if (ESCAPABLE.indexOf(escaped) >= 0) {
+                        append(segment, escaped, segments, caseSensitive);
+                    } else if (CLASS_ESCAPES.indexOf(escaped) >= 0) {
+                        // a class like \w or an assertion like \b
+                        flush(segment, segments);
+                    } else {
+                        // a character given by its code, or a property
+                        i = operandEnd(regex, i);
+                        if (i < 0) {
+                            return null;
+                        }
+                        flush(segment, segments);
+                    }
+                    break;
+                case '[':
+                    flush(segment, segments);
+                    i = classEnd(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // the previous character is optional
+                    if (segment.length() > 0) {
+                        segment.setLength(segment.length() - 1);
+                    }
+                    flush(segment, segments);
+                    if (c == '{') {
+                        i = regex.indexOf('}', i);
+                        if (i < 0) {
+                            return null;
+                        }
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    flush(segment, segments);
+                    break;
+                default:
+                    append(segment, c, segments, caseSensitive);
+                    break;
+            }
+        }
+        flush(segment, segments);
+        return segments;
+    }
+
+    /**
+     * Index of the last character of the operand of the escape at
+     * {@code i}, like the digits of {@code \x20} or {@code \0101}.
+     *
+     * @return The index, -1 if the escape is not known or is malformed.
+     */
+    private static int operandEnd(String regex, int i) {
+        char escaped = regex.charAt(i);
+        boolean braced = i + 1 < regex.length()
+                && regex.charAt(i + 1) == '{';
+        switch (escaped) {
+            case 'x':
+                return braced ? regex.indexOf('}', i)
+                        : digitsEnd(regex, i, 2, 16);
+            case 'o':
+                return braced ? regex.indexOf('}', i) : -1;
+            case 'N':
+                // \N alone is any character but a newline
+                return braced ? regex.indexOf('}', i) : i;
+            case 'p':
+            case 'P':
+                if (braced) {
+                    return regex.indexOf('}', i);
+                }
+                return i + 1 < regex.length() ? i + 1 : -1;
+            case 'c':
+                return i + 1 < regex.length() ? i + 1 : -1;
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+                // octal, there are no groups to refer to
+                return digitsEnd(regex, i, 2, 8);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Index of the last of at most {@code max} digits following
+     * {@code i}, {@code i} if there are none.
+     */
+    private static int digitsEnd(String regex, int i, int max, int radix) {
+        int end = i;
+        while (end - i < max && end + 1 < regex.length()
+                && Character.digit(regex.charAt(end + 1), radix) >= 0) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Index of the bracket closing the character class starting at
+     * {@code start}, -1 for nested classes or if there is none.
+     */
+    private static int classEnd(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void append(StringBuilder segment, char c,
+            List<String> segments, boolean caseSensitive) {
+        if (!caseSensitive && c > 0x7f) {
+            flush(segment, segments);
+        } else {
+            segment.append(c);
+        }
+    }
+}
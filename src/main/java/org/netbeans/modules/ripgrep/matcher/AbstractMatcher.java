@@ -48,14 +48,14 @@ public abstract class AbstractMatcher  {
     public AbstractMatcher() {
     }
     
-    public final Def check(FileObject file, SearchListener listener) {
+    public final synchronized Def check(FileObject file,
+            SearchListener listener) {
         long start = System.currentTimeMillis();
         Def def = checkMeasuredInternal(file, listener);
         long end = System.currentTimeMillis();
         if (def != null) {
             matchingFiles++;
-            if (def.getTextDetails() != null
-                    && !def.getTextDetails().isEmpty()) {
+            if (def.getDetailsCount() > 0) {
                 matchingItems++;
             }
         }
@@ -0,0 +1,114 @@
+package org.netbeans.modules.ripgrep.matcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A message rg printed to its standard error output.
+ *
+ * <p>rg reports problems with single files as
+ * {@code rg: PATH: MESSAGE (os error N)}. Any other message, like a regex
+ * syntax error, is a general one and can span several lines.</p>
+ */
+public final class RipGrepDiagnostic {
+
+    private static final String PREFIX = "rg: ";                       //NOI18N
+    private static final Pattern FILE_MESSAGE = Pattern.compile(
+            "(.+?): (.*\\(os error (\\d+)\\))");                        //NOI18N
+    /** ENOENT, the file was deleted while rg was walking its folder. */
+    private static final String NO_SUCH_FILE = "2";                     //NOI18N
+
+    /**
+     * How a diagnostic should be reported.
+     */
+    public enum Kind {
+        /** A file could not be searched. */
+        FILE_ERROR,
+        /** A file disappeared before it could be searched. */
+        FILE_SKIPPED,
+        /** A problem not related to a file. */
+        GENERAL
+    }
+
+    private final Kind kind;
+    private final String path;
+    private final String message;
+
+    private RipGrepDiagnostic(Kind kind, String path, String message) {
+        this.kind = kind;
+        this.path = path;
+        this.message = message;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Path of the file, {@code null} for {@link Kind#GENERAL} diagnostics.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Reads rg error output until its end and passes every diagnostic to the
+     * consumer.
+     */
+    public static void readAll(InputStream err,
+            Consumer<RipGrepDiagnostic> consumer) throws IOException {
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(err, StandardCharsets.UTF_8))) {
+            StringBuilder general = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                boolean start = line.startsWith(PREFIX);
+                if (!start && general != null) {
+                    // continuation of a multi-line message
+                    general.append('\n').append(line);
+                    continue;
+                }
+                if (general != null) {
+                    consumer.accept(new RipGrepDiagnostic(Kind.GENERAL, null,
+                            general.toString()));
+                    general = null;
+                }
+                String text = start ? line.substring(PREFIX.length()) : line;
+                RipGrepDiagnostic diagnostic = parseFileMessage(text);
+                if (diagnostic != null) {
+                    consumer.accept(diagnostic);
+                } else {
+                    general = new StringBuilder(text);
+                }
+            }
+            if (general != null) {
+                consumer.accept(new RipGrepDiagnostic(Kind.GENERAL, null,
+                        general.toString()));
+            }
+        }
+    }
+
+    private static RipGrepDiagnostic parseFileMessage(String text) {
+        Matcher m = FILE_MESSAGE.matcher(text);
+        if (!m.matches()) {
+            return null;
+        }
+        Kind kind = NO_SUCH_FILE.equals(m.group(3))
+                ? Kind.FILE_SKIPPED : Kind.FILE_ERROR;
+        return new RipGrepDiagnostic(kind, m.group(1), m.group(2));
+    }
+}
@@ -0,0 +1,271 @@
+package org.netbeans.modules.ripgrep.matcher;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder for the output of {@code rg --json}.
+ *
+ * <p>Messages are read token by token straight from the process output. Only
+ * {@code begin}, {@code match} and {@code end} messages are decoded, any other
+ * message ({@code context}, {@code summary}...) is skipped without being
+ * materialized. Decoded values are exposed through the getters of this
+ * decoder and are valid until the next call of {@link #next()}.</p>
+ *
+ * <p><b>Example:</b></p>
+ * <pre>{@code
+ * try (RipGrepJsonDecoder decoder = new RipGrepJsonDecoder(in)) {
+ *     RipGrepJsonDecoder.Event event;
+ *     while ((event = decoder.next()) != null) {
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ */
+public final class RipGrepJsonDecoder implements Closeable {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * Type of a decoded rg message.
+     */
+    public enum Event {
+        BEGIN, MATCH, END
+    }
+
+    private final JsonParser parser;
+
+    private String path;
+    private int lineNumber;
+    private long absoluteOffset;
+    private String lineText;
+    private int submatchCount;
+    private int[] submatchStarts = new int[4];
+    private int[] submatchEnds = new int[4];
+    private String[] submatchTexts = new String[4];
+
+    public RipGrepJsonDecoder(InputStream in) throws IOException {
+        this.parser = FACTORY.createParser(in);
+    }
+
+    /**
+     * Decodes the next interesting message.
+     *
+     * @return type of the decoded message, or {@code null} if the end of the
+     * stream was reached.
+     * @throws JsonParseException if the stream does not contain valid JSON.
+     */
+    public Event next() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser,
+                        "Expected start of rg message, got " + token); //NOI18N
+            }
+            Event event = readMessage();
+            if (event != null) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads one {@code {"type": ..., "data": {...}}} message. The type always
+     * precedes the data in the rg output, data of unknown or uninteresting
+     * types are skipped.
+     */
+    private Event readMessage() throws IOException {
+        Event event = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("type".equals(field)) {                                 //NOI18N
+                event = toEvent(parser.getText());
+            } else if ("data".equals(field) && event != null) {         //NOI18N
+                readData(event);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return event;
+    }
+
+    private static Event toEvent(String type) {
+        switch (type) {
+            case "begin":                                               //NOI18N
+                return Event.BEGIN;
+            case "match":                                               //NOI18N
+                return Event.MATCH;
+            case "end":                                                 //NOI18N
+                return Event.END;
+            default:
+                return null;
+        }
+    }
+
+    private void readData(Event event) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        if (event == Event.MATCH) {
+            lineNumber = 0;
+            absoluteOffset = 0;
+            lineText = null;
+            submatchCount = 0;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (event != Event.MATCH) {
+                if ("path".equals(field)) {                             //NOI18N
+                    path = readText();
+                } else {
+                    parser.skipChildren();
+                }
+                continue;
+            }
+            switch (field) {
+                case "lines":                                           //NOI18N
+                    lineText = readText();
+                    break;
+                case "line_number":                                     //NOI18N
+                    lineNumber = value == JsonToken.VALUE_NUMBER_INT
+                            ? parser.getIntValue() : 0;
+                    break;
+                case "absolute_offset":                                 //NOI18N
+                    absoluteOffset = value == JsonToken.VALUE_NUMBER_INT
+                            ? parser.getLongValue() : 0;
+                    break;
+                case "submatches":                                      //NOI18N
+                    readSubmatches();
+                    break;
+                default:
+                    // the path is already known from the begin message
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private void readSubmatches() throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            ensureSubmatchCapacity(submatchCount + 1);
+            int start = 0;
+            int end = 0;
+            String text = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "match":                                       //NOI18N
+                        text = readText();
+                        break;
+                    case "start":                                       //NOI18N
+                        start = parser.getIntValue();
+                        break;
+                    case "end":                                         //NOI18N
+                        end = parser.getIntValue();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            submatchStarts[submatchCount] = start;
+            submatchEnds[submatchCount] = end;
+            submatchTexts[submatchCount] = text;
+            submatchCount++;
+        }
+    }
+
+    /**
+     * Reads an rg "arbitrary data" object. It is either {@code {"text": ...}}
+     * for valid UTF-8 or {@code {"bytes": ...}} with base64 encoded content.
+     */
+    private String readText() throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String text = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("text".equals(field)) {                                 //NOI18N
+                text = parser.getText();
+            } else if ("bytes".equals(field)) {                         //NOI18N
+                text = new String(parser.getBinaryValue(),
+                        StandardCharsets.UTF_8);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return text;
+    }
+
+    private void ensureSubmatchCapacity(int capacity) {
+        if (capacity > submatchStarts.length) {
+            int newLength = Math.max(capacity, submatchStarts.length * 2);
+            submatchStarts = Arrays.copyOf(submatchStarts, newLength);
+            submatchEnds = Arrays.copyOf(submatchEnds, newLength);
+            submatchTexts = Arrays.copyOf(submatchTexts, newLength);
+        }
+    }
+
+    /**
+     * Path of the file of the last {@code begin} or {@code end} message.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public long getAbsoluteOffset() {
+        return absoluteOffset;
+    }
+
+    public String getLineText() {
+        return lineText;
+    }
+
+    public int getSubmatchCount() {
+        return submatchCount;
+    }
+
+    /**
+     * Start of the submatch, relative to the start of the line.
+     */
+    public int getSubmatchStart(int index) {
+        return submatchStarts[index];
+    }
+
+    /**
+     * End of the submatch, relative to the start of the line.
+     */
+    public int getSubmatchEnd(int index) {
+        return submatchEnds[index];
+    }
+
+    public String getSubmatchText(int index) {
+        return submatchTexts[index];
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
@@ -0,0 +1,218 @@
+package org.netbeans.modules.ripgrep.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
+import org.apache.commons.io.filefilter.NameFileFilter;
+import org.apache.commons.lang3.StringUtils;
+import org.openide.modules.InstalledFileLocator;
+import org.openide.util.RequestProcessor;
+import org.openide.util.Utilities;
+
+/**
+ * Starts Ripgrep processes and keeps track of them.
+ *
+ * <p>The rg binary and the fixed part of the command line are resolved once
+ * and shared by all searches. Every started process is registered until it is
+ * {@linkplain #reclaim(Process) reclaimed}, so that a terminated search, or the
+ * IDE shutdown, does not leave orphaned rg processes behind.</p>
+ *
+ * <p>rg reads its arguments only at exec time, so processes themselves cannot
+ * be spawned ahead of a search. {@link #prewarm()} runs the binary once in
+ * background instead, which checks it and brings it into the OS caches before
+ * the first real search.</p>
+ */
+public final class RipGrepLauncher {
+
+    private static final Logger LOG = Logger.getLogger(
+            RipGrepLauncher.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor(
+            RipGrepLauncher.class);
+    /**
+     * How long to wait for a destroyed process before killing it forcibly.
+     */
+    private static final long DESTROY_TIMEOUT_MS = 500;
+    private static RipGrepLauncher defaultInstance;
+
+    /** Fixed command line prefix: the binary and options used by every run. */
+    private final List<String> commandTemplate;
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private RequestProcessor.Task prewarmTask;
+
+    private RipGrepLauncher(String executable) {
+        // ignore RIPGREP_CONFIG_PATH, the search options are set by the IDE
+        this.commandTemplate = Collections.unmodifiableList(
+                Arrays.asList(executable, "--no-config"));              //NOI18N
+    }
+
+    public static synchronized RipGrepLauncher getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new RipGrepLauncher(findExecutable());
+        }
+        return defaultInstance;
+    }
+
+    private static String findExecutable() {
+
+        File bins = InstalledFileLocator.getDefault().locate(
+                "ripgrep/bins",
+                "org.netbeans.modules.ripgrep",
+                false);
+
+        Collection<File> listFiles = FileUtils.listFiles(bins, new NameFileFilter(new String[]{"rg", "rg.exe"}),
+                new DirectoryFileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() && StringUtils.equalsAny(file.getName(), "windows", "linux", "mac");
+            }
+
+        });
+        switch (Utilities.getOperatingSystem()) {
+            case Utilities.OS_LINUX:
+                return listFiles.stream()
+                        .filter(file -> file.getParentFile().getName().equals("linux"))
+                        .map(f -> {
+                            f.setExecutable(true, true);
+                            return f;
+                        }).findFirst().get().getAbsolutePath();
+
+            case Utilities.OS_WIN_OTHER:
+                return listFiles.stream()
+                        .filter(file -> file.getParentFile().getName().equals("windows"))
+                        .map(f -> {
+                            f.setExecutable(true, true);
+                            return f;
+                        }).findFirst().get().getAbsolutePath();
+            case Utilities.OS_MAC:
+                return listFiles.stream()
+                        .filter(file -> file.getParentFile().getName().equals("ios"))
+                        .map(f -> {
+                            f.setExecutable(true, true);
+                            return f;
+                        }).findFirst().get().getAbsolutePath();
+            default:
+                LOG.warning("Couldn't find provided Ripgrep binaries. Swithing to default installed 'rg' command");
+                return "rg";
+        }
+    }
+
+    /**
+     * Runs {@code rg --version} once in background, so that the first search
+     * does not pay for the cold start of the binary.
+     */
+    public synchronized void prewarm() {
+        if (prewarmTask != null) {
+            return;
+        }
+        prewarmTask = RP.post(() -> {
+            Process p = null;
+            try {
+                p = start(Collections.singletonList("--version"));      //NOI18N
+                try (InputStream is = p.getInputStream()) {
+                    LOG.log(Level.FINE, "Using {0}", //NOI18N
+                            IOUtils.toString(is, Charset.defaultCharset()).trim());
+                }
+            } catch (IOException ex) {
+                LOG.log(Level.INFO, "Ripgrep cannot be started", ex);   //NOI18N
+            } finally {
+                reclaim(p);
+            }
+        });
+    }
+
+    /**
+     * Starts rg with the given arguments appended to the command template.
+     * The process is tracked until it is passed to {@link #reclaim(Process)}.
+     * Its error output is kept apart from the JSON output and must be read by
+     * the caller, see {@link RipGrepDiagnostic#readAll}.
+     */
+    public Process start(List<String> arguments) throws IOException {
+        return start(arguments, null);
+    }
+
+    /**
+     * Starts rg in the given working directory. Relative paths and anchored
+     * globs in the arguments are resolved against it.
+     *
+     * @param directory Working directory, {@code null} to inherit the one of
+     * the IDE.
+     * @see #start(List)
+     */
+    public Process start(List<String> arguments, File directory)
+            throws IOException {
+        List<String> command = new ArrayList<>(
+                commandTemplate.size() + arguments.size());
+        command.addAll(commandTemplate);
+        command.addAll(arguments);
+
+        LOG.info(command.toString());
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(directory);
+        Process process = processBuilder.start();
+        processes.add(process);
+        return process;
+    }
+
+    /**
+     * Stops the process if it is still running and waits for its end. The
+     * process is no longer tracked after this call.
+     *
+     * @param process Process to reclaim, can be {@code null}.
+     */
+    public void reclaim(Process process) {
+        if (process == null) {
+            return;
+        }
+        try {
+            if (process.isAlive()) {
+                process.destroy();
+                if (!process.waitFor(DESTROY_TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        } finally {
+            processes.remove(process);
+        }
+    }
+
+    /**
+     * Reclaims all processes that are still tracked.
+     */
+    public void reclaimAll() {
+        for (Process process : new ArrayList<>(processes)) {
+            reclaim(process);
+        }
+    }
+
+    /**
+     * Reclaims the processes of the default launcher, if it has been created.
+     * Unlike {@link #getDefault()}, does not look for the executable.
+     */
+    public static void reclaimAllIfStarted() {
+        RipGrepLauncher launcher;
+        synchronized (RipGrepLauncher.class) {
+            launcher = defaultInstance;
+        }
+        if (launcher != null) {
+            launcher.reclaimAll();
+        }
+    }
+}
@@ -1,39 +1,25 @@
 package org.netbeans.modules.ripgrep.matcher;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
-import java.util.logging.Logger;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.NameFileFilter;
-import org.apache.commons.lang3.StringUtils;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import org.netbeans.api.queries.FileEncodingQuery;
 import org.netbeans.api.search.SearchPattern;
 import org.netbeans.api.search.provider.SearchListener;
+import org.netbeans.modules.ripgrep.MatchStore;
 import org.netbeans.modules.ripgrep.MatchingObject;
-import org.netbeans.modules.ripgrep.TextDetail;
 import org.openide.filesystems.FileObject;
 import org.openide.loaders.DataObject;
 import org.openide.loaders.DataObjectNotFoundException;
-import org.openide.modules.InstalledFileLocator;
 import org.openide.util.Exceptions;
-import org.openide.util.Utilities;
 
 public class RipGrepMatcher extends AbstractMatcher {
 
-    private static final Logger LOG = Logger.getLogger(RipGrepMatcher.class.getName());
-
-    private static final String RG_COMMAND;
-
     // Search parameters
     private String searchTerm;
     private boolean isCaseSensitive = false;
@@ -48,58 +34,13 @@ public class RipGrepMatcher extends AbstractMatcher {
     private boolean isUseIgnoreList = false;
     private String fileNamePatterns;
     private List<String> includes = new ArrayList<>();
+    private List<String> excludes = new ArrayList<>();
+    private Predicate<FileObject> ignored;
+    private File workingDirectory;
 
-    private Process process;
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
     private final SearchPattern searchPattern;
 
-    static {
-
-        File bins = InstalledFileLocator.getDefault().locate(
-                "ripgrep/bins",
-                "org.netbeans.modules.ripgrep",
-                false);
-
-        Collection<File> listFiles = FileUtils.listFiles(bins, new NameFileFilter(new String[]{"rg", "rg.exe"}),
-                new DirectoryFileFilter() {
-            @Override
-            public boolean accept(File file) {
-                return file.isDirectory() && StringUtils.equalsAny(file.getName(), "windows", "linux", "mac");
-            }
-
-        });
-        switch (Utilities.getOperatingSystem()) {
-            case Utilities.OS_LINUX:
-                RG_COMMAND = listFiles.stream()
-                        .filter(file -> file.getParentFile().getName().equals("linux"))
-                        .map(f -> {
-                            f.setExecutable(true, true);
-                            return f;
-                        }).findFirst().get().getAbsolutePath();
-                break;
-
-            case Utilities.OS_WIN_OTHER:
-                RG_COMMAND = listFiles.stream()
-                        .filter(file -> file.getParentFile().getName().equals("windows"))
-                        .map(f -> {
-                            f.setExecutable(true, true);
-                            return f;
-                        }).findFirst().get().getAbsolutePath();
-                break;
-            case Utilities.OS_MAC:
-                RG_COMMAND = listFiles.stream()
-                        .filter(file -> file.getParentFile().getName().equals("ios"))
-                        .map(f -> {
-                            f.setExecutable(true, true);
-                            return f;
-                        }).findFirst().get().getAbsolutePath();
-                break;
-            default:
-                LOG.warning("Couldn't find provided Ripgrep binaries. Swithing to default installed 'rg' command");
-                RG_COMMAND = "rg";
-        }
-
-    }
-
     public RipGrepMatcher(SearchPattern searchPattern) {
         this.searchPattern = searchPattern;
 
@@ -156,6 +97,31 @@ public class RipGrepMatcher extends AbstractMatcher {
         return this;
     }
 
+    /**
+     * Globs of files and folders rg must not read, without the leading
+     * {@code !}. Anchored globs are resolved against the
+     * {@linkplain #setWorkingDirectory(File) working directory}. Used only
+     * if the ignore list is enabled.
+     */
+    public RipGrepMatcher addExcludes(List<String> globs) {
+        this.excludes = globs;
+        return this;
+    }
+
+    /**
+     * Filter for ignored files that cannot be excluded by globs. Used only if
+     * the ignore list is enabled.
+     */
+    public RipGrepMatcher setIgnoredFilter(Predicate<FileObject> ignored) {
+        this.ignored = ignored;
+        return this;
+    }
+
+    public RipGrepMatcher setWorkingDirectory(File workingDirectory) {
+        this.workingDirectory = workingDirectory;
+        return this;
+    }
+
     public RipGrepMatcher addScopeFiles(List<String> filesPath) {
         this.scopeFiles = filesPath;
         return this;
@@ -171,16 +137,87 @@ public class RipGrepMatcher extends AbstractMatcher {
         return this;
     }
 
+    public List<String> getScopeFiles() {
+        return scopeFiles;
+    }
+
+    public String getSearchTerm() {
+        return searchTerm;
+    }
+
+    public boolean isLiteral() {
+        return isLiteral;
+    }
+
+    public boolean isCaseSensitive() {
+        return isCaseSensitive;
+    }
+
+    /**
+     * Whether the search can be narrowed to a list of files. rg does not
+     * filter files given explicitly, so only searches that filter files the
+     * way {@code rg --files} lists them can be narrowed: without file name
+     * patterns, excludes, archives and ignored files.
+     */
+    public boolean isIndexable() {
+        return searchTerm != null && !searchTerm.isEmpty()
+                && (fileNamePatterns == null || fileNamePatterns.isEmpty())
+                && !isUseIgnoreList && !searchInArchives
+                && !searchInGeneratedSources;
+    }
+
+    /**
+     * Whether every file this matcher finds is found by the previous matcher
+     * too, so that a search can be narrowed to the files found by the
+     * previous one. That is the case if both search the same files for
+     * literals and this literal contains the previous one.
+     */
+    public boolean refines(RipGrepMatcher previous) {
+        if (!isLiteral || !previous.isLiteral || isWholeWord
+                || previous.isWholeWord
+                || isCaseSensitive != previous.isCaseSensitive
+                || searchTerm == null || previous.searchTerm == null
+                || previous.searchTerm.isEmpty()
+                || !contains(searchTerm, previous.searchTerm)
+                || !scopeFiles.equals(previous.scopeFiles)) {
+            return false;
+        }
+        List<String> options = buildCommand(scopeFiles, 0);
+        List<String> previousOptions = previous.buildCommand(scopeFiles, 0);
+        // the search term follows the first option
+        options.remove(1);
+        previousOptions.remove(1);
+        return options.equals(previousOptions);
+    }
+
+    private boolean contains(String text, String part) {
+        for (int i = 0; i + part.length() <= text.length(); i++) {
+            if (text.regionMatches(!isCaseSensitive, i, part, 0,
+                    part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // Builds the Ripgrep command and runs it
     public Process getProcess() {
-        try {
-            List<String> command = buildCommand();
-
-            LOG.info(command.toString());
-            ProcessBuilder processBuilder = new ProcessBuilder(command);
-            processBuilder.redirectErrorStream(true); // Merge stdout and stderr
-            process = processBuilder.start();
+        return getProcess(scopeFiles, 0);
+    }
 
+    /**
+     * Runs the search on a subset of the scope files. The process is tracked
+     * until it is passed to {@link #reclaim(Process)} or the matcher is
+     * terminated.
+     *
+     * @param scope Files and folders to search.
+     * @param threads Number of threads rg may use, 0 to let rg decide.
+     */
+    public Process getProcess(List<String> scope, int threads) {
+        try {
+            Process process = RipGrepLauncher.getDefault().start(
+                    buildCommand(scope, threads), workingDirectory);
+            processes.add(process);
             return process;
         } catch (IOException ex) {
             Exceptions.printStackTrace(ex);
@@ -188,12 +225,51 @@ public class RipGrepMatcher extends AbstractMatcher {
         return null;
     }
 
+    /**
+     * Runs the search on the files printing the replacement of every match
+     * instead of JSON, see {@link RipGrepReplacement}. rg ignores
+     * {@code --replace} in JSON output, so this is a separate run.
+     *
+     * @param files Files to search.
+     * @param replacement Replacement in rg syntax.
+     */
+    public Process getReplacementProcess(List<String> files,
+            String replacement) throws IOException {
+        List<String> command = buildCommand(files, 0);
+        int json = command.indexOf("--json");                          //NOI18N
+        command.remove(json);
+        command.addAll(json, Arrays.asList("--replace", replacement,   //NOI18N
+                "--only-matching", "--null", "--line-number",          //NOI18N
+                "--with-filename", "--no-heading", "--color", "never")); //NOI18N
+        Process process = RipGrepLauncher.getDefault().start(command,
+                workingDirectory);
+        processes.add(process);
+        return process;
+    }
+
+    /**
+     * Whether {@link #getReplacementProcess} reports the replacements in the
+     * order of the JSON matches, one per match. Multi-line matches are
+     * printed differently.
+     */
+    public boolean canPreviewReplacements() {
+        return searchTerm != null && !searchTerm.isEmpty()
+                && searchTerm.indexOf('\n') < 0
+                && !searchTerm.contains("\\n");                        //NOI18N
+    }
+
+    /**
+     * Stops the process if it still runs and forgets it.
+     */
+    public void reclaim(Process process) {
+        processes.remove(process);
+        RipGrepLauncher.getDefault().reclaim(process);
+    }
+
     // Build the command with the provided options
-    private List<String> buildCommand() {
+    private List<String> buildCommand(List<String> scope, int threads) {
         List<String> command = new ArrayList<>();
 
-        command.add(RG_COMMAND);
-
         if (searchTerm.isEmpty() && !fileNamePatterns.isEmpty()) {
             command.add("--files");
         } else if (isLiteral) {
@@ -218,32 +294,11 @@ public class RipGrepMatcher extends AbstractMatcher {
             command.add("--word-regexp");
         }
 
-        // Include patterns
-        if (!fileNamePatterns.isEmpty() && !isGlobeInclude) {
-
-            for (String include : includes) {
-                command.add("--glob");
-                command.add(include);
-            }
-        }
-
-        if (isGlobeInclude) {
-            command.add("--glob");
-            command.add(fileNamePatterns);
-        }
-
-        // Exclude patterns
-        if (isUseIgnoreList) {
-        }
+        addFileFilters(command);
 
         // extra options
         command.add("--json");
 
-        if (searchInGeneratedSources) {
-            command.add("--no-ignore");
-            command.add("--hidden");
-        }
-
         if (usePcre) {
             command.add("--engine");
             command.add("pcre2");
@@ -255,201 +310,131 @@ public class RipGrepMatcher extends AbstractMatcher {
             // command.removeIf((c) -> c.equals("--fixed-strings"));
         }
 
+        if (threads > 0) {
+            command.add("--threads");
+            command.add(String.valueOf(threads));
+        }
+
         // Set the directory to getProcess in
-        for (String scopeFile : scopeFiles) {
+        for (String scopeFile : scope) {
             command.add(scopeFile);
         }
 
         return command;
     }
 
-    public BufferedReader getReader() {
-        // Read the output from the process
-        return new BufferedReader(new InputStreamReader(this.getProcess().getInputStream()));
-    }
-
-    @Override
-    protected MatchingObject.Def checkMeasuredInternal(FileObject file, SearchListener listener) {
-
-        return new MatchingObject.Def(file, FileEncodingQuery.getEncoding(file), new ArrayList<>());
-
-    }
-
-    public List<TextDetail> getDetails(FileObject fo, RipGrepOutput.Data data) {
-        List<TextDetail> textDetails = new ArrayList<>();
-
-        for (RipGrepMatcher.RipGrepOutput.Submatche submatche : data.getSubmatches()) {
-
-            try {
-                TextDetail textDetail = new TextDetail(DataObject.find(fo),
-                        searchPattern);
-
-                textDetail.setLine(data.getLineNumber());// show matching line number in found
-                textDetail.setColumn(submatche.getStart() + 1);// show matching column number in found
-                textDetail.setMatchedText(submatche.getMatch().getText());
-                textDetail.setStartOffset(data.getAbsoluteOffset() + submatche.getStart());
-                textDetail.setEndOffset(data.getAbsoluteOffset() + submatche.getEnd());
-                textDetail.setMarkLength(submatche.getMatch().getText().length());// highlight from coulumn. Need the rp
-                // highlight lenght
-                textDetail.setLineText(data.getLines().getText());// show matching line text in found
+    /**
+     * Adds the options selecting the files to search. rg applies them to
+     * files it finds in folders, not to files given explicitly.
+     */
+    private void addFileFilters(List<String> command) {
+        // Include patterns
+        if (!fileNamePatterns.isEmpty() && !isGlobeInclude) {
 
-                textDetails.add(textDetail);
-                return textDetails;
-            } catch (DataObjectNotFoundException ex) {
-                Exceptions.printStackTrace(ex);
+            for (String include : includes) {
+                command.add("--glob");
+                command.add(include);
             }
         }
-        return null;
-    }
 
-    @Override
-    public void terminate() {
-        if (process != null) {
-            process.destroy();
+        if (isGlobeInclude) {
+            command.add("--glob");
+            command.add(fileNamePatterns);
         }
-    }
-
-    // Class to represent output line
-    @JsonInclude(JsonInclude.Include.NON_NULL)
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class RipGrepOutput {
 
-        private final String type;
-        private final Data data;
-
-        @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
-        public RipGrepOutput(@JsonProperty("type") String type, @JsonProperty("data") Data data) {
-            this.type = type;
-            this.data = data;
+        // Exclude patterns
+        if (isUseIgnoreList) {
+            for (String exclude : excludes) {
+                command.add("--glob");
+                command.add("!" + exclude);
+            }
         }
 
-        public String getType() {
-            return type;
+        if (searchInGeneratedSources) {
+            command.add("--no-ignore");
+            command.add("--hidden");
         }
+    }
 
-        public Data getData() {
-            return data;
+    /**
+     * Lists the files under the folder that the search would search, one
+     * path per line. The process is tracked like a search process.
+     *
+     * @param maxDepth How deep to descend, -1 for no limit.
+     */
+    public Process getFilesProcess(String folder, int maxDepth)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("--files");                                         //NOI18N
+        addFileFilters(command);
+        if (maxDepth >= 0) {
+            command.add("--max-depth");                                 //NOI18N
+            command.add(String.valueOf(maxDepth));
         }
+        command.add(folder);
+        Process process = RipGrepLauncher.getDefault().start(command,
+                workingDirectory);
+        processes.add(process);
+        return process;
+    }
 
-        @JsonIgnoreProperties(ignoreUnknown = true)
-        public static class Data {
-
-            private final Path path;
-            private final Lines lines;
-
-            private final int lineNumber;
-            private final int absoluteOffset;
-            private final List<Submatche> submatches;
-
-            @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
-            public Data(@JsonProperty("path") Path path,
-                    @JsonProperty("lines") Lines lines,
-                    @JsonProperty("line_number") int lineNumber,
-                    @JsonProperty("absolute_offset") int absoluteOffset,
-                    @JsonProperty("submatches") List<Submatche> submatches) {
-                this.path = path;
-                this.lines = lines;
-                this.lineNumber = lineNumber;
-                this.absoluteOffset = absoluteOffset;
-                this.submatches = submatches;
-            }
-
-            public Path getPath() {
-                return path;
-            }
-
-            public Lines getLines() {
-                return lines;
-            }
-
-            public int getLineNumber() {
-                return lineNumber;
-            }
-
-            public int getAbsoluteOffset() {
-                return absoluteOffset;
-            }
-
-            public List<Submatche> getSubmatches() {
-                return submatches;
-            }
+    @Override
+    protected MatchingObject.Def checkMeasuredInternal(FileObject file, SearchListener listener) {
 
+        if (file == null
+                || (isUseIgnoreList && ignored != null && ignored.test(file))) {
+            return null;
         }
+        return new MatchingObject.Def(file, FileEncodingQuery.getEncoding(file),
+                new MatchStore(findDataObject(file), searchPattern));
 
-        public static class Path {
-
-            private final String text;
-
-            @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
-            public Path(@JsonProperty("text") String text) {
-                this.text = text;
-            }
-
-            public String getText() {
-                return text;
-            }
+    }
 
+    /**
+     * The data object is found once per file, all its matches share it.
+     */
+    private static DataObject findDataObject(FileObject file) {
+        try {
+            return DataObject.find(file);
+        } catch (DataObjectNotFoundException ex) {
+            Exceptions.printStackTrace(ex);
+            return null;
         }
+    }
 
-        public static class Lines {
-
-            private final String text;
-
-            @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
-            public Lines(@JsonProperty("text") String text) {
-                this.text = text;
-            }
-
-            public String getText() {
-                return text;
-            }
-
+    /**
+     * Adds every submatch of the {@code match} message the decoder is
+     * currently positioned on to the match store. Matches of the same line
+     * share its text, the offset of the line is recorded in the
+     * {@linkplain MatchStore#getLineIndex() line index}. Submatches that end
+     * beyond {@link Integer#MAX_VALUE}, which no document can hold, are
+     * skipped.
+     */
+    public void addDetails(MatchStore matches, RipGrepJsonDecoder match) {
+        if (matches.getDataObject() == null) {
+            return;
         }
-
-        public static class Submatche {
-
-            private final Match match;
-            private final int start;
-            private final int end;
-
-            @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
-            public Submatche(@JsonProperty("match") Match match,
-                    @JsonProperty("start") int start,
-                    @JsonProperty("end") int end) {
-                this.match = match;
-                this.start = start;
-                this.end = end;
-            }
-
-            public Match getMatch() {
-                return match;
-            }
-
-            public int getStart() {
-                return start;
-            }
-
-            public int getEnd() {
-                return end;
+        long absoluteOffset = match.getAbsoluteOffset();
+        int lineNumber = match.getLineNumber();
+        String lineText = match.getLineText();
+        matches.getLineIndex().add(lineNumber, absoluteOffset);
+        for (int i = 0; i < match.getSubmatchCount(); i++) {
+            int start = match.getSubmatchStart(i);
+            long end = absoluteOffset + match.getSubmatchEnd(i);
+            if (end > Integer.MAX_VALUE) {
+                break;
             }
-
+            matches.add(lineNumber, start + 1,
+                    (int) (absoluteOffset + start), (int) end,
+                    lineText, match.getSubmatchText(i));
         }
+    }
 
-        public static class Match {
-
-            private final String text;
-
-            @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
-            public Match(@JsonProperty("text") String text) {
-                this.text = text;
-            }
-
-            public String getText() {
-                return text;
-            }
-
+    @Override
+    public void terminate() {
+        for (Process process : processes.toArray(new Process[0])) {
+            reclaim(process);
         }
-
     }
 
 }
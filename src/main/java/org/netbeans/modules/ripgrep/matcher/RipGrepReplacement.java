@@ -0,0 +1,97 @@
+package org.netbeans.modules.ripgrep.matcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Replacement of one match, as printed by
+ * {@code rg --replace R --only-matching --null --line-number}.
+ *
+ * <p>Every match is printed as {@code PATH\0LINE:TEXT}, in the order rg
+ * reports the matches in JSON. A replacement containing line breaks
+ * continues on the following lines.</p>
+ */
+public final class RipGrepReplacement {
+
+    private final String path;
+    private final int line;
+    private final String text;
+
+    private RipGrepReplacement(String path, int line, String text) {
+        this.path = path;
+        this.line = line;
+        this.text = text;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Number of the line where the match starts, 1-based.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Reads rg output until its end and passes every replacement to the
+     * consumer.
+     */
+    public static void readAll(InputStream in,
+            Consumer<RipGrepReplacement> consumer) throws IOException {
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String path = null;
+            int line = 0;
+            StringBuilder text = null;
+            String l;
+            while ((l = reader.readLine()) != null) {
+                int nul = l.indexOf('\0');
+                int colon = nul < 0 ? -1 : l.indexOf(':', nul);
+                int number = colon < 0 ? -1 : parseLine(l, nul + 1, colon);
+                if (number < 0) {
+                    if (text != null) {
+                        text.append('\n').append(l);
+                    }
+                    continue;
+                }
+                if (text != null) {
+                    consumer.accept(new RipGrepReplacement(path, line,
+                            text.toString()));
+                }
+                path = l.substring(0, nul);
+                line = number;
+                text = new StringBuilder(l.substring(colon + 1));
+            }
+            if (text != null) {
+                consumer.accept(new RipGrepReplacement(path, line,
+                        text.toString()));
+            }
+        }
+    }
+
+    private static int parseLine(String l, int from, int to) {
+        if (from == to) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = from; i < to; i++) {
+            char c = l.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+}
@@ -24,14 +24,17 @@ import java.awt.event.ActionEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyVetoException;
+import java.util.List;
 import java.util.ResourceBundle;
 import javax.accessibility.AccessibleContext;
 import javax.swing.JButton;
 import javax.swing.JToggleButton;
 import javax.swing.UIManager;
 import org.netbeans.api.annotations.common.StaticResource;
+import org.netbeans.api.search.SearchControl;
 import org.netbeans.modules.ripgrep.BasicComposition;
 import org.netbeans.modules.ripgrep.BasicSearchCriteria;
+import org.netbeans.modules.ripgrep.Constants;
 import org.netbeans.modules.ripgrep.FindDialogMemory;
 import org.netbeans.modules.ripgrep.Manager;
 import org.netbeans.modules.ripgrep.MatchingObject;
@@ -40,12 +43,14 @@ import org.netbeans.modules.ripgrep.ResultModel;
 import org.netbeans.modules.ripgrep.ResultView;
 import org.netbeans.modules.ripgrep.TextDetail;
 import org.openide.explorer.view.OutlineView;
+import org.openide.filesystems.FileObject;
 import org.openide.nodes.Node;
 import org.openide.nodes.NodeAdapter;
 import org.openide.nodes.NodeListener;
 import org.openide.nodes.NodeMemberEvent;
 import org.openide.util.ImageUtilities;
 import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -63,11 +68,44 @@ public abstract class BasicAbstractResultsPanel
     @StaticResource
     private static final String FLAT_VIEW_ICON =
             "org/netbeans/modules/ripgrep/res/file_view.png";            //NOI18N
+    @StaticResource
+    private static final String SHOW_MORE_ICON =
+            "org/netbeans/modules/ripgrep/res/show.gif";                 //NOI18N
+    @StaticResource
+    private static final String REFRESH_CHANGED_ICON =
+            "org/netbeans/modules/ripgrep/res/refresh.png";              //NOI18N
+    @StaticResource
+    private static final String WATCH_ICON =
+            "org/netbeans/modules/ripgrep/res/find.gif";                 //NOI18N
+    @StaticResource
+    private static final String SEARCH_IN_RESULTS_ICON =
+            "org/netbeans/modules/ripgrep/res/multi_selection.png";      //NOI18N
+    private static final RequestProcessor RP =
+            new RequestProcessor(BasicAbstractResultsPanel.class.getName());
+    /**
+     * Refreshes watched results, one panel at a time, so that changes in
+     * several watched scopes do not run many searches at once.
+     */
+    private static final RequestProcessor WATCH_RP = new RequestProcessor(
+            BasicAbstractResultsPanel.class.getName() + ".watch", 1); //NOI18N
+    /**
+     * Longest time a change waits for the refresh of watched results while
+     * files keep changing.
+     */
+    private static final int WATCH_MAX_DELAY = 10 * Constants.WATCH_DELAY;
     private static final String MODE_FLAT = "flat";                     //NOI18N
     private static final String MODE_TREE = "tree";                     //NOI18N
     protected ResultModel resultModel;
     protected JToggleButton btnTreeView;
     protected JToggleButton btnFlatView;
+    protected JButton btnShowMore;
+    protected JButton btnRefreshChanged;
+    protected JToggleButton btnWatch;
+    protected JButton btnSearchInResults;
+    private final RequestProcessor.Task watchTask =
+            WATCH_RP.create(this::refreshWatched);
+    /** when the first change not refreshed yet was reported, or 0 */
+    private long watchPendingSince;
     protected JButton showDetailsButton;
     protected boolean details;
     protected BasicComposition composition;
@@ -101,10 +139,30 @@ public abstract class BasicAbstractResultsPanel
         initAccessibility();
         this.resultModel.addPropertyChangeListener(
                 ResultModel.PROP_RESULTS_EDIT, this);
+        this.resultModel.addPropertyChangeListener(
+                ResultModel.PROP_OVERFLOW, this);
+        this.resultModel.addPropertyChangeListener(
+                ResultModel.PROP_SCOPE_CHANGED, this);
     }
 
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
+        if (ResultModel.PROP_OVERFLOW.equals(evt.getPropertyName())) {
+            EventQueue.invokeLater(() -> btnShowMore.setEnabled(
+                    resultModel.getOverflowCount() > 0));
+        } else if (ResultModel.PROP_SCOPE_CHANGED.equals(
+                evt.getPropertyName())) {
+            if (btnWatch.isSelected()) {
+                scheduleWatchRefresh();
+            } else {
+                EventQueue.invokeLater(() -> {
+                    btnRefreshChanged.setEnabled(
+                            resultModel.hasScopeChanges());
+                    btnWatch.setEnabled(resultModel.isTrackingChanges());
+                });
+            }
+            return;
+        }
         // update the root node after change in model
         if (finished) {
             setFinalRootNodeText();
@@ -140,8 +198,39 @@ public abstract class BasicAbstractResultsPanel
                 "TEXT_BUTTON_FLAT_VIEW"));                              //NOI18N
         btnFlatView.setSelected(!btnTreeView.isSelected());
         btnFlatView.addActionListener((ActionEvent e) -> toggleView(btnFlatView.isSelected()));
+        btnShowMore = new JButton();
+        btnShowMore.setEnabled(false);
+        btnShowMore.setIcon(ImageUtilities.loadImageIcon(SHOW_MORE_ICON,
+                true));
+        btnShowMore.setToolTipText(UiUtils.getText(
+                "TEXT_BUTTON_SHOW_MORE"));                              //NOI18N
+        btnShowMore.addActionListener((ActionEvent e) -> showMore());
+        btnRefreshChanged = new JButton();
+        btnRefreshChanged.setEnabled(false);
+        btnRefreshChanged.setIcon(ImageUtilities.loadImageIcon(
+                REFRESH_CHANGED_ICON, true));
+        btnRefreshChanged.setToolTipText(UiUtils.getText(
+                "TEXT_BUTTON_REFRESH_CHANGED"));                        //NOI18N
+        btnRefreshChanged.addActionListener((ActionEvent e) -> refreshChanged());
+        btnWatch = new JToggleButton();
+        btnWatch.setEnabled(false);
+        btnWatch.setIcon(ImageUtilities.loadImageIcon(WATCH_ICON, true));
+        btnWatch.setToolTipText(UiUtils.getText(
+                "TEXT_BUTTON_WATCH"));                                  //NOI18N
+        btnWatch.addActionListener((ActionEvent e) -> toggleWatch());
+        btnSearchInResults = new JButton();
+        btnSearchInResults.setEnabled(false);
+        btnSearchInResults.setIcon(ImageUtilities.loadImageIcon(
+                SEARCH_IN_RESULTS_ICON, true));
+        btnSearchInResults.setToolTipText(UiUtils.getText(
+                "TEXT_BUTTON_SEARCH_IN_RESULTS"));                      //NOI18N
+        btnSearchInResults.addActionListener((ActionEvent e) -> searchInResults());
         addButton(btnTreeView);
         addButton(btnFlatView);
+        addButton(btnShowMore);
+        addButton(btnRefreshChanged);
+        addButton(btnWatch);
+        addButton(btnSearchInResults);
         if (!details) {
             btnPrev.setVisible(false);
             btnNext.setVisible(false);
@@ -163,6 +252,106 @@ public abstract class BasicAbstractResultsPanel
         addButton(showDetailsButton);
     }
 
+    /**
+     * Add results kept on disk after the limits were reached.
+     */
+    private void showMore() {
+        btnShowMore.setEnabled(false);
+        RP.post(() -> {
+            List<MatchingObject> added = resultModel.loadOverflow();
+            EventQueue.invokeLater(() -> {
+                if (!added.isEmpty()) {
+                    update();
+                    addMatchingObjects(added);
+                }
+                btnShowMore.setEnabled(resultModel.getOverflowCount() > 0);
+                if (finished) {
+                    setFinalRootNodeText();
+                }
+            });
+        });
+    }
+
+    /**
+     * Opens the find dialog to search only the files of the results.
+     */
+    private void searchInResults() {
+        btnSearchInResults.setEnabled(false);
+        // results kept on disk are read off the EDT
+        RP.post(() -> {
+            List<FileObject> files = resultModel.getFoundFiles();
+            EventQueue.invokeLater(() -> {
+                btnSearchInResults.setEnabled(true);
+                if (files != null && !files.isEmpty()) {
+                    SearchControl.openFindDialog(
+                            composition.createResultsPresenter(files));
+                }
+            });
+        });
+    }
+
+    /**
+     * Search again only the files changed since the search finished.
+     */
+    private void refreshChanged() {
+        btnRefreshChanged.setEnabled(false);
+        RP.post(() -> {
+            List<MatchingObject> added = resultModel.refreshChanged();
+            EventQueue.invokeLater(() -> showRefreshed(added));
+        });
+    }
+
+    private void showRefreshed(List<MatchingObject> added) {
+        update();
+        if (!added.isEmpty()) {
+            addMatchingObjects(added);
+        }
+        btnRefreshChanged.setEnabled(!btnWatch.isSelected()
+                && resultModel.hasScopeChanges());
+        if (finished) {
+            setFinalRootNodeText();
+        }
+    }
+
+    /**
+     * In watch mode, changed files are searched again automatically, shortly
+     * after they stop changing.
+     */
+    private void toggleWatch() {
+        boolean watch = btnWatch.isSelected();
+        btnRefreshChanged.setEnabled(!watch && resultModel.hasScopeChanges());
+        if (watch && resultModel.hasScopeChanges()) {
+            scheduleWatchRefresh();
+        }
+    }
+
+    /**
+     * Postpones the refresh until no change comes for
+     * {@link Constants#WATCH_DELAY}, but not longer than
+     * {@link #WATCH_MAX_DELAY} since the first pending change.
+     */
+    private synchronized void scheduleWatchRefresh() {
+        long now = System.currentTimeMillis();
+        if (watchPendingSince == 0) {
+            watchPendingSince = now;
+        } else if (now - watchPendingSince >= WATCH_MAX_DELAY) {
+            return; // already scheduled, files keep changing
+        }
+        watchTask.schedule((int) Math.min(Constants.WATCH_DELAY,
+                watchPendingSince + WATCH_MAX_DELAY - now));
+    }
+
+    private void refreshWatched() {
+        synchronized (this) {
+            watchPendingSince = 0;
+        }
+        if (!btnWatch.isSelected()) {
+            return;
+        }
+        List<MatchingObject> added = resultModel.refreshChanged();
+        EventQueue.invokeLater(() -> showRefreshed(added));
+    }
+
     private void toggleView(boolean flat) {
         FindDialogMemory memory = FindDialogMemory.getDefault();
         if (flat) {
@@ -218,6 +407,7 @@ public abstract class BasicAbstractResultsPanel
     public void searchFinished() {
         super.searchFinished();
         this.finished = true;
+        btnSearchInResults.setEnabled(resultModel.size() > 0);
         if (details && resultModel.size() > 0 && showDetailsButton != null) {
             showDetailsButton.setEnabled(true);
         }
@@ -239,6 +429,14 @@ public abstract class BasicAbstractResultsPanel
         afterMatchingNodeAdded();
     }
 
+    public void addMatchingObjects(List<MatchingObject> mos) {
+        for (MatchingObject mo : mos) {
+            resultsOutlineSupport.addMatchingObject(mo);
+        }
+        updateRootNodeText();
+        afterMatchingNodeAdded();
+    }
+
     @Override
     public final OutlineView getOutlineView() {
         return resultsOutlineSupport.getOutlineView();
@@ -352,16 +550,21 @@ public abstract class BasicAbstractResultsPanel
     }
 
     private void addChildAdditionListener(Node addedNode) {
-        for (Node n : addedNode.getChildren().getNodes(true)) {
-            addChildAdditionListener(n);
+        // detail nodes are leaves, do not create them just to listen on them
+        if (!(addedNode instanceof MatchingObjectNode)) {
+            for (Node n : addedNode.getChildren().getNodes(true)) {
+                addChildAdditionListener(n);
+            }
         }
         addedNode.addNodeListener(resultsNodeAdditionListener);
 
     }
 
     private void removeChildAdditionListener(Node removedNode) {
-        for (Node n : removedNode.getChildren().getNodes(true)) {
-            removeChildAdditionListener(n);
+        if (!(removedNode instanceof MatchingObjectNode)) {
+            for (Node n : removedNode.getChildren().getNodes(true)) {
+                removeChildAdditionListener(n);
+            }
         }
         removedNode.removeNodeListener(resultsNodeAdditionListener);
     }
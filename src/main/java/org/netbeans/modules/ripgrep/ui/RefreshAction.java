@@ -19,16 +19,22 @@
 package org.netbeans.modules.ripgrep.ui;
 
 import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
 import org.netbeans.api.search.provider.SearchListener;
+import org.netbeans.modules.ripgrep.BasicComposition;
 import org.netbeans.modules.ripgrep.MatchingObject;
 import org.netbeans.modules.ripgrep.ui.Bundle;
 import org.netbeans.modules.ripgrep.ui.Bundle;
 import org.netbeans.modules.ripgrep.ui.Bundle;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileStateInvalidException;
+import org.openide.filesystems.FileUtil;
 import org.openide.util.NbBundle;
 import org.openide.util.RequestProcessor;
 
@@ -64,10 +70,14 @@ public class RefreshAction extends AbstractAction {
                     }
                 }
                 if (fo != null && fo.isValid()) {
-                    MatchingObject.Def def = mo.getBasicComposition()
-                            .getMatcher().check(
-                                    fo, new SearchListener() {
-                                    });
+                    BasicComposition composition = mo.getBasicComposition();
+                    MatchingObject.Def def = searchAgain(composition, fo);
+                    if (def == null) {
+                        // no match left
+                        def = composition.getMatcher().check(
+                                fo, new SearchListener() {
+                                });
+                    }
                     if (def != null) {
                         mo.refresh(def);
                     }
@@ -75,4 +85,24 @@ public class RefreshAction extends AbstractAction {
             });
         }
     }
+
+    /**
+     * Runs rg on the file only.
+     */
+    private static MatchingObject.Def searchAgain(
+            BasicComposition composition, FileObject fo) {
+        File file = FileUtil.toFile(fo);
+        if (file == null) {
+            return null;
+        }
+        try {
+            List<MatchingObject.Def> found = composition.searchAgain(
+                    Collections.singletonList(file.getPath()));
+            return found.isEmpty() ? null : found.get(0);
+        } catch (IOException ex) {
+            Logger.getLogger(RefreshAction.class.getName())
+                    .log(Level.FINE, null, ex);
+            return null;
+        }
+    }
 }
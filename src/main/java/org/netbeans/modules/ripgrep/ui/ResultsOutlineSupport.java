@@ -461,8 +461,7 @@ public class ResultsOutlineSupport {
         }
         delegate = key.getDataObject().getNodeDelegate();
         Children children;
-        if (key.getTextDetails() == null
-                || key.getTextDetails().isEmpty()) {
+        if (key.getDetailsCount() == 0) {
             children = Children.LEAF;
         } else {
             children = key.getDetailsChildren(replacing);